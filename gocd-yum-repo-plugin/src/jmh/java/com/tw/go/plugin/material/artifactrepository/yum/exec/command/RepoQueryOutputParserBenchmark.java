@@ -0,0 +1,78 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand.DELIMITER;
+
+/**
+ * Run with {@code ./gradlew :gocd-yum-repo-plugin:jmh -PjmhIncludes=RepoQueryOutputParserBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RepoQueryOutputParserBenchmark {
+    @Param({"1", "100", "100000"})
+    int lines;
+
+    private List<String> output;
+
+    @Setup
+    public void setUp() {
+        output = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            String file = "go-agent-13.1." + i + "-16714.noarch.rpm";
+            output.add("Packages/" + file + DELIMITER + "go-agent" + DELIMITER + "13.1." + i + DELIMITER + "16714" + DELIMITER + "noarch" + DELIMITER + "1371547862"
+                    + DELIMITER + "ThoughtWorks <go@thoughtworks.com>" + DELIMITER + "http://repohost/some/path/Packages/" + file + DELIMITER + "None" + DELIMITER + "0");
+        }
+    }
+
+    @Benchmark
+    public Object parse() {
+        RepoQueryOutputParser parser = new RepoQueryOutputParser("go-agent*");
+        output.forEach(parser);
+        try {
+            return parser.toRevision();
+        } catch (MultiplePackageException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * What every line used to cost: a regex backed split.
+     */
+    @Benchmark
+    public int splitEveryLine() {
+        int fields = 0;
+        for (String line : output) {
+            fields += line.split(DELIMITER).length;
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run with {@code ./gradlew :gocd-yum-repo-plugin:jmh -PjmhIncludes=RpmVersionComparatorBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RpmVersionComparatorBenchmark {
+    @Param({"20000"})
+    int packages;
+
+    private List<PrimaryPackage> candidates;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        candidates = new ArrayList<>(packages);
+        for (int i = 0; i < packages; i++) {
+            String version = random.nextInt(10) + "." + random.nextInt(30) + "." + random.nextInt(200) + (random.nextBoolean() ? "" : "~rc" + random.nextInt(5));
+            String release = random.nextInt(3000) + ".el" + (7 + random.nextInt(3));
+            candidates.add(new PrimaryPackage("mycomp", "x86_64", String.valueOf(random.nextInt(2)), version, release, random.nextInt(), null, null, "mycomp.rpm", null));
+        }
+    }
+
+    @Benchmark
+    public int compareVersions() {
+        return RpmVersionComparator.rpmvercmp("2.10.4~rc1", "2.10.4") + RpmVersionComparator.rpmvercmp("1.0.0001a", "1.0.1b");
+    }
+
+    @Benchmark
+    public int compareEvr() {
+        return RpmVersionComparator.compareEvr("0", "13.1.1", "16714.el7", "0", "13.1.10", "16714.el7");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<PrimaryPackage> sortNewestFirst() {
+        List<PrimaryPackage> sorted = new ArrayList<>(candidates);
+        Collections.shuffle(sorted, new Random(7));
+        sorted.sort(PackageIndex.NEWEST_FIRST);
+        return sorted;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An inclusive range of byte offsets, as in HTTP Range and Content-Range headers.
+ */
+public class ByteRange {
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final long first;
+    private final long last;
+
+    public ByteRange(long first, long last) {
+        if (first < 0 || last < first) {
+            throw new IllegalArgumentException(String.format("Invalid byte range %d-%d", first, last));
+        }
+        this.first = first;
+        this.last = last;
+    }
+
+    static ByteRange fromContentRange(String contentRange) {
+        Matcher matcher = contentRange == null ? null : CONTENT_RANGE.matcher(contentRange.trim());
+        if (matcher == null || !matcher.matches()) {
+            throw new RuntimeException(String.format("Unexpected Content-Range '%s'", contentRange));
+        }
+        return new ByteRange(Long.parseLong(matcher.group(1)), Long.parseLong(matcher.group(2)));
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    public long length() {
+        return last - first + 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ByteRange that = (ByteRange) o;
+        return first == that.first && last == that.last;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, last);
+    }
+
+    @Override
+    public String toString() {
+        return first + "-" + last;
+    }
+}
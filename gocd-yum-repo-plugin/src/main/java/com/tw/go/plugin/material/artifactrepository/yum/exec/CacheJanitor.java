@@ -0,0 +1,257 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.HelperProcessRunner;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.MetadataStore;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps the cache directories under go.yum.tmpdir within a byte quota. The directories of the repositories used least
+ * recently are deleted first; a directory counts as used whenever a query holds a {@link Lease} on it. Directories with
+ * a lease, held by this or any other process sharing go.yum.tmpdir, are never deleted, and a query that asks for a
+ * lease while its directory is being deleted waits for the deletion to finish and starts with an empty directory.
+ * <p>
+ * Files hard-linked from several directories, as in the {@link MetadataStore}, are counted once.
+ */
+public class CacheJanitor {
+    public static final String QUOTA_PROPERTY = "go.yum.cache.quota.mb";
+    public static final String INTERVAL_PROPERTY = "go.yum.cache.janitor.interval.seconds";
+    public static final long DEFAULT_QUOTA_MB = 2048;
+    public static final long DEFAULT_INTERVAL_SECONDS = 600;
+    static final String LOCK_FILE = ".lock";
+    private static final Logger LOGGER = Logger.getLoggerFor(CacheJanitor.class);
+
+    private final Supplier<File> root;
+    private final long quotaBytes;
+    private final AtomicLong usageBytes = new AtomicLong();
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesEvicted = new AtomicLong();
+    private final AtomicLong evictionsSkipped = new AtomicLong();
+
+    public interface Lease extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    CacheJanitor(Supplier<File> root, long quotaBytes) {
+        this.root = root;
+        this.quotaBytes = quotaBytes;
+    }
+
+    public static CacheJanitor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        private static final CacheJanitor INSTANCE = start(new CacheJanitor(() -> new YumEnvironmentMap(null).getTempRoot(), Long.getLong(QUOTA_PROPERTY, DEFAULT_QUOTA_MB) * 1024 * 1024));
+
+        private static CacheJanitor start(CacheJanitor janitor) {
+            long interval = Long.getLong(INTERVAL_PROPERTY, DEFAULT_INTERVAL_SECONDS);
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "yum-cache-janitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    janitor.run();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Could not clean up the yum metadata cache: " + e.getMessage(), e);
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+            return janitor;
+        }
+    }
+
+    /**
+     * Marks the directory as used and keeps it from being deleted until the lease is closed. The directory is
+     * created if it does not exist.
+     */
+    public Lease use(File directory) {
+        FileLockManager.Lease lease = FileLockManager.getInstance().acquire(new File(directory, LOCK_FILE), RepositoryLockManager.Mode.READ);
+        directory.setLastModified(System.currentTimeMillis());
+        return lease::close;
+    }
+
+    /**
+     * Measures the cache and, if it is over the quota, deletes the least recently used directories that are not in use
+     * until it is within the quota again.
+     */
+    public void run() {
+        File tmpdir = root.get();
+        List<File> candidates = candidates(tmpdir);
+        Map<Object, Long> sizes = new HashMap<>();
+        Map<Object, Integer> references = new HashMap<>();
+        Map<File, List<Object>> filesOf = new HashMap<>();
+        for (File directory : candidates) {
+            List<Object> files = measure(directory, sizes);
+            files.forEach(key -> references.merge(key, 1, Integer::sum));
+            filesOf.put(directory, files);
+        }
+        measure(new File(new File(tmpdir, YumEnvironmentMap.DIRECTORY_PREFIX + MetadataStore.DIRECTORY_ID), "objects"), sizes);
+        measure(new File(tmpdir, YumEnvironmentMap.DIRECTORY_PREFIX + HelperProcessRunner.HELPER), sizes);
+        long usage = sizes.values().stream().mapToLong(Long::longValue).sum();
+        long evicted = 0;
+
+        if (quotaBytes > 0 && usage > quotaBytes) {
+            candidates.sort(Comparator.comparingLong(File::lastModified));
+            for (File directory : candidates) {
+                if (usage <= quotaBytes) {
+                    break;
+                }
+                long freed = evict(directory, filesOf.get(directory), sizes, references);
+                if (freed >= 0) {
+                    usage -= freed;
+                    evicted++;
+                }
+            }
+            if (evicted > 0) {
+                new MetadataStore(new File(tmpdir, YumEnvironmentMap.DIRECTORY_PREFIX + MetadataStore.DIRECTORY_ID)).removeUnreferenced();
+            }
+        }
+        usageBytes.set(usage);
+        this.directories.set(candidates.size() - evicted);
+        LOGGER.debug(format("yum metadata cache uses %d of %d bytes in %d directories after evicting %d", usage, quotaBytes, candidates.size() - evicted, evicted));
+    }
+
+    /**
+     * @return the bytes freed, or -1 if the directory is in use
+     */
+    private long evict(File directory, List<Object> files, Map<Object, Long> sizes, Map<Object, Integer> references) {
+        long lastUsed = directory.lastModified();
+        try (FileLockManager.Lease lease = FileLockManager.getInstance().tryAcquire(new File(directory, LOCK_FILE), RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS)) {
+            if (lease == null) {
+                evictionsSkipped.incrementAndGet();
+                return -1;
+            }
+            FileUtils.deleteQuietly(directory);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        long freed = 0;
+        for (Object key : files) {
+            if (references.merge(key, -1, Integer::sum) == 0) {
+                freed += sizes.get(key);
+            }
+        }
+        evictions.incrementAndGet();
+        bytesEvicted.addAndGet(freed);
+        LOGGER.info(format("Deleted yum metadata cache %s (%d bytes), last used %tc", directory, freed, lastUsed));
+        return freed;
+    }
+
+    /**
+     * @return the per-repository directories of repoquery and of the metadata store
+     */
+    private static List<File> candidates(File tmpdir) {
+        List<File> candidates = new ArrayList<>();
+        File[] yumDirectories = tmpdir.listFiles((dir, name) -> name.startsWith(YumEnvironmentMap.DIRECTORY_PREFIX)
+                && !name.equals(YumEnvironmentMap.DIRECTORY_PREFIX + MetadataStore.DIRECTORY_ID)
+                && !name.equals(YumEnvironmentMap.DIRECTORY_PREFIX + HelperProcessRunner.HELPER));
+        candidates.addAll(Arrays.asList(yumDirectories == null ? new File[0] : yumDirectories));
+        File[] storeDirectories = new File(new File(tmpdir, YumEnvironmentMap.DIRECTORY_PREFIX + MetadataStore.DIRECTORY_ID), MetadataStore.REPOSITORIES).listFiles(File::isDirectory);
+        candidates.addAll(Arrays.asList(storeDirectories == null ? new File[0] : storeDirectories));
+        candidates.removeIf(file -> !file.isDirectory());
+        return candidates;
+    }
+
+    /**
+     * @return the keys of the files under the directory; files reached through several links share one key
+     */
+    private static List<Object> measure(File directory, Map<Object, Long> sizes) {
+        List<Object> files = new ArrayList<>();
+        if (!directory.isDirectory()) {
+            return files;
+        }
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    Object key = attributes.fileKey() != null ? attributes.fileKey() : file.toAbsolutePath();
+                    sizes.put(key, attributes.size());
+                    files.add(key);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // deleted while walking
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn(format("Could not measure %s: %s", directory, e.getMessage()));
+        }
+        return files;
+    }
+
+    public long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    /**
+     * @return the bytes used by the cache as of the last run
+     */
+    public long getUsageBytes() {
+        return usageBytes.get();
+    }
+
+    public long getDirectories() {
+        return directories.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getBytesEvicted() {
+        return bytesEvicted.get();
+    }
+
+    /**
+     * @return how often a directory was due for eviction but kept because a query was using it
+     */
+    public long getEvictionsSkipped() {
+        return evictionsSkipped.get();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+public class CacheValidators {
+    public static final CacheValidators NONE = new CacheValidators(null, null);
+
+    private final String etag;
+    private final String lastModified;
+
+    public CacheValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isEmpty() {
+        return etag == null && lastModified == null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CacheValidators that = (CacheValidators) o;
+        if (etag != null ? !etag.equals(that.etag) : that.etag != null) {
+            return false;
+        }
+        return lastModified != null ? lastModified.equals(that.lastModified) : that.lastModified == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = etag != null ? etag.hashCode() : 0;
+        result = 31 * result + (lastModified != null ? lastModified.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheValidators{" +
+                "etag='" + etag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                '}';
+    }
+}
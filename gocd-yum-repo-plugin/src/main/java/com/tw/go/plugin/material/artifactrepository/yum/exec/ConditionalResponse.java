@@ -0,0 +1,49 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+public class ConditionalResponse<T> {
+    private final boolean modified;
+    private final T body;
+    private final CacheValidators validators;
+
+    private ConditionalResponse(boolean modified, T body, CacheValidators validators) {
+        this.modified = modified;
+        this.body = body;
+        this.validators = validators;
+    }
+
+    public static <T> ConditionalResponse<T> modified(T body, CacheValidators validators) {
+        return new ConditionalResponse<>(true, body, validators);
+    }
+
+    public static <T> ConditionalResponse<T> notModified(CacheValidators validators) {
+        return new ConditionalResponse<>(false, null, validators);
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public T getBody() {
+        return body;
+    }
+
+    public CacheValidators getValidators() {
+        return validators;
+    }
+}
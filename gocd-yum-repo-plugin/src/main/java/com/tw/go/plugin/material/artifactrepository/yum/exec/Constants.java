@@ -21,4 +21,5 @@ public class Constants {
     public static final String PASSWORD = "PASSWORD";
     public static final String PACKAGE_SPEC = "PACKAGE_SPEC";
     public static String PACKAGE_LOCATION = "LOCATION";
+    public static final String PACKAGE_EPOCH = "EPOCH";
 }
@@ -19,6 +19,7 @@ package com.tw.go.plugin.material.artifactrepository.yum.exec;
 import com.tw.go.plugin.common.util.StringUtil;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.ValidationError;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.ValidationResultMessage;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
@@ -59,4 +60,8 @@ public class Credentials {
     public boolean isPresent() {
         return StringUtil.isNotBlank(user) || StringUtil.isNotBlank(password);
     }
+
+    public String digest() {
+        return DigestUtils.sha256Hex((user == null ? "" : user) + "\n" + (password == null ? "" : password));
+    }
 }
@@ -16,22 +16,75 @@
 
 package com.tw.go.plugin.material.artifactrepository.yum.exec;
 
+import org.apache.commons.io.input.BoundedInputStream;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 
-public class FileBasedConnectionChecker implements ConnectionChecker {
+public class FileBasedConnectionChecker implements ConnectionChecker, MetadataFetcher {
     public void checkConnection(String givenUrl, Credentials credentials) {
         if (credentials.isComplete()) {
             throw new RuntimeException("File protocol does not support username and/or password.");
         }
         try {
-            URL url = new URL(givenUrl);
-            if (!new File(url.getPath()).exists()) {
+            if (!toFile(givenUrl).exists()) {
                 throw new RuntimeException("Invalid file path.");
             }
         } catch (MalformedURLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public <T> T fetch(String givenUrl, Credentials credentials, StreamHandler<T> handler) {
+        checkConnection(givenUrl, credentials);
+        try (InputStream stream = new FileInputStream(toFile(givenUrl))) {
+            return handler.handle(stream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public <T> ConditionalResponse<T> fetchIfModified(String givenUrl, Credentials credentials, CacheValidators validators, StreamHandler<T> handler) {
+        checkConnection(givenUrl, credentials);
+        try {
+            File file = toFile(givenUrl);
+            CacheValidators current = new CacheValidators(null, file.lastModified() + "/" + file.length());
+            if (current.equals(validators)) {
+                return ConditionalResponse.notModified(current);
+            }
+            return ConditionalResponse.modified(fetch(givenUrl, credentials, handler), current);
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean fetchRanges(String givenUrl, Credentials credentials, List<ByteRange> ranges, RangeConsumer consumer) {
+        checkConnection(givenUrl, credentials);
+        try (FileChannel channel = FileChannel.open(toFile(givenUrl).toPath(), StandardOpenOption.READ)) {
+            for (ByteRange range : ranges) {
+                channel.position(range.getFirst());
+                BoundedInputStream part = new BoundedInputStream(Channels.newInputStream(channel), range.length());
+                part.setPropagateClose(false);
+                consumer.accept(range, part);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private File toFile(String givenUrl) throws MalformedURLException {
+        return new File(new URL(givenUrl).getPath());
+    }
 }
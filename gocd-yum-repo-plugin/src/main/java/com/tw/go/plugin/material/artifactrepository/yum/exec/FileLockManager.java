@@ -0,0 +1,305 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.lang.String.format;
+
+/**
+ * Read/write locks on lock files, shared with every process that uses the same go.yum.tmpdir. Within this process a
+ * lock file is guarded by a read/write lock, and the first reader or the writer holds a {@link FileLock} on the file
+ * for as long as the process uses it.
+ * <p>
+ * A writer records its process and the time it locked the file. Another process may delete a lock file whose writer
+ * no longer runs on this host, or that has been held longer than {@value #STALE_PROPERTY}. Lock files replaced that
+ * way are detected, and whoever still holds the old one keeps a lock that no one else waits for.
+ * <p>
+ * Locks of different files may be nested, but a read lock cannot be upgraded to a write lock.
+ */
+public class FileLockManager {
+    public static final String STALE_PROPERTY = "go.yum.lock.stale.seconds";
+    public static final long DEFAULT_STALE_SECONDS = 1800;
+    private static final long MAX_POLL_MILLIS = 500;
+    private static final Logger LOGGER = Logger.getLoggerFor(FileLockManager.class);
+    private static final FileLockManager INSTANCE = new FileLockManager(
+            TimeUnit.SECONDS.toMillis(Long.getLong(RepositoryLockManager.TIMEOUT_PROPERTY, RepositoryLockManager.DEFAULT_TIMEOUT_SECONDS)),
+            TimeUnit.SECONDS.toMillis(Long.getLong(STALE_PROPERTY, DEFAULT_STALE_SECONDS)));
+    private static final String HOST = hostName();
+    private static final String OWNER = ProcessHandle.current().pid() + " " + HOST;
+
+    private final long defaultTimeoutMillis;
+    private final long staleMillis;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, RepositoryLockManager.LockStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong staleLocksBroken = new AtomicLong();
+
+    FileLockManager(long defaultTimeoutMillis, long staleMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.staleMillis = staleMillis;
+    }
+
+    public static FileLockManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits for the lock up to the configured timeout.
+     *
+     * @throws RuntimeException if the lock could not be acquired in time
+     */
+    public Lease acquire(File lockFile, RepositoryLockManager.Mode mode) {
+        try {
+            Lease lease = tryAcquire(lockFile, mode, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (lease == null) {
+                throw new RuntimeException(format("Timed out after %d ms waiting for the %s lock of %s", defaultTimeoutMillis, mode.name().toLowerCase(), lockFile));
+            }
+            return lease;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(format("Interrupted while waiting for the %s lock of %s", mode.name().toLowerCase(), lockFile));
+        }
+    }
+
+    /**
+     * @return the held lock, or null if it could not be acquired within the timeout
+     */
+    public Lease tryAcquire(File lockFile, RepositoryLockManager.Mode mode, long timeout, TimeUnit unit) throws InterruptedException {
+        Entry entry = entries.computeIfAbsent(lockFile.getAbsolutePath(), Entry::new);
+        Lock local = mode == RepositoryLockManager.Mode.READ ? entry.local.readLock() : entry.local.writeLock();
+        RepositoryLockManager.LockStats lockStats = stats.computeIfAbsent(lockFile.getName(), k -> new RepositoryLockManager.LockStats());
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        lockStats.waiting.incrementAndGet();
+        boolean acquired = false;
+        try {
+            if (local.tryLock(timeout, unit)) {
+                try {
+                    acquired = mode == RepositoryLockManager.Mode.READ ? entry.lockShared(this, deadline) : lockFile(entry, false, deadline);
+                } finally {
+                    if (!acquired) {
+                        local.unlock();
+                    }
+                }
+            }
+        } finally {
+            lockStats.waiting.decrementAndGet();
+            lockStats.recordWait(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), acquired);
+        }
+        if (!acquired) {
+            return null;
+        }
+        lockStats.held.incrementAndGet();
+        return new Lease(entry, mode, local, lockStats);
+    }
+
+    /**
+     * @return wait times and holders of all lock files with the given name
+     */
+    public RepositoryLockManager.LockStats getStats(String lockFileName) {
+        return stats.get(lockFileName);
+    }
+
+    public long getStaleLocksBroken() {
+        return staleLocksBroken.get();
+    }
+
+    private boolean lockFile(Entry entry, boolean shared, long deadline) throws InterruptedException {
+        Path path = entry.file.toPath();
+        long poll = 1;
+        while (true) {
+            try {
+                Files.createDirectories(path.getParent());
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                FileLock lock;
+                try {
+                    Object locked = fileKey(path);
+                    lock = tryLock(channel, shared);
+                    if (lock != null && (locked == null || !locked.equals(fileKey(path)))) {
+                        // replaced while it was being locked
+                        lock.release();
+                        channel.close();
+                        continue;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    channel.close();
+                    throw e;
+                }
+                if (lock != null) {
+                    if (!shared) {
+                        channel.truncate(0);
+                        channel.write(ByteBuffer.wrap(format("%s %d", OWNER, System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8)), 0);
+                    }
+                    entry.channel = channel;
+                    entry.lock = lock;
+                    return true;
+                }
+                channel.close();
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                if (isStale(path)) {
+                    Files.deleteIfExists(path);
+                    staleLocksBroken.incrementAndGet();
+                    LOGGER.warn(format("Deleted stale lock file %s", path));
+                    continue;
+                }
+            } catch (NoSuchFileException e) {
+                // deleted by the cache janitor or as stale between opening and locking
+                continue;
+            } catch (IOException e) {
+                throw new RuntimeException(format("Could not lock %s: %s", path, e.getMessage()), e);
+            }
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            Thread.sleep(Math.max(1, Math.min(poll, remaining)));
+            poll = Math.min(poll * 2, MAX_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * @return null if the file is locked by another process, or through another channel of this one
+     */
+    private static FileLock tryLock(FileChannel channel, boolean shared) throws IOException {
+        try {
+            return channel.tryLock(0, Long.MAX_VALUE, shared);
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    private static void unlockFile(Entry entry, boolean shared) {
+        try {
+            if (!shared && entry.channel.isOpen()) {
+                entry.channel.truncate(0);
+            }
+            entry.lock.release();
+            entry.channel.close();
+        } catch (IOException e) {
+            LOGGER.warn(format("Could not release lock file %s: %s", entry.file, e.getMessage()));
+        } finally {
+            entry.channel = null;
+            entry.lock = null;
+        }
+    }
+
+    /**
+     * A lock file is stale if the writer that holds it no longer runs on this host, or has held it for too long.
+     */
+    private boolean isStale(Path path) throws IOException {
+        String[] owner = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim().split(" ");
+        if (owner.length != 3) {
+            return false;
+        }
+        try {
+            long pid = Long.parseLong(owner[0]);
+            long lockedAt = Long.parseLong(owner[2]);
+            boolean gone = owner[1].equals(HOST) && !ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+            return gone || System.currentTimeMillis() - lockedAt > staleMillis;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : path.toAbsolutePath();
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName().replace(' ', '_');
+        } catch (IOException e) {
+            return "localhost";
+        }
+    }
+
+    private static class Entry {
+        private final File file;
+        private final ReentrantReadWriteLock local = new ReentrantReadWriteLock(true);
+        private int readers;
+        private FileChannel channel;
+        private FileLock lock;
+
+        private Entry(String path) {
+            this.file = new File(path);
+        }
+
+        private synchronized boolean lockShared(FileLockManager manager, long deadline) throws InterruptedException {
+            if (readers == 0 && !manager.lockFile(this, true, deadline)) {
+                return false;
+            }
+            readers++;
+            return true;
+        }
+
+        private synchronized void unlockShared() {
+            if (--readers == 0) {
+                unlockFile(this, true);
+            }
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final RepositoryLockManager.Mode mode;
+        private final Lock local;
+        private final RepositoryLockManager.LockStats stats;
+        private boolean released;
+
+        private Lease(Entry entry, RepositoryLockManager.Mode mode, Lock local, RepositoryLockManager.LockStats stats) {
+            this.entry = entry;
+            this.mode = mode;
+            this.local = local;
+            this.stats = stats;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                if (mode == RepositoryLockManager.Mode.READ) {
+                    entry.unlockShared();
+                } else {
+                    unlockFile(entry, false);
+                }
+                stats.held.decrementAndGet();
+                local.unlock();
+            }
+        }
+    }
+}
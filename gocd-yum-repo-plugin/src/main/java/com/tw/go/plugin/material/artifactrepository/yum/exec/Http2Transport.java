@@ -0,0 +1,143 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One java.net.http client that negotiates HTTP/2 where the server supports it, so concurrent checks of repositories
+ * on the same host multiplex over one connection.
+ */
+class Http2Transport extends HttpTransport {
+    private final HttpClient client = HttpClient.newBuilder().
+            version(HttpClient.Version.HTTP_2).
+            followRedirects(HttpClient.Redirect.NEVER).
+            connectTimeout(Duration.ofMillis(connectionTimeoutMillis())).
+            build();
+
+    @Override
+    <T> T send(String method, String url, Map<String, String> headers, ResponseHandler<T> handler) {
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).
+                method(method, HttpRequest.BodyPublishers.noBody()).
+                timeout(Duration.ofMillis(socketTimeoutMillis()));
+        headers.forEach(builder::setHeader);
+        HttpResponse<InputStream> response;
+        try {
+            response = client.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(messageOf(e.getCause(), uri), e.getCause());
+        }
+        Http2Response wrapped = new Http2Response(response);
+        try (InputStream body = wrapped.getBody()) {
+            return handler.handle(wrapped);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String messageOf(Throwable throwable, URI uri) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null) {
+                return cause.getClass().getName() + ": " + cause.getMessage();
+            }
+        }
+        if (throwable instanceof ConnectException) {
+            return String.format("%s: Could not connect to %s", throwable.getClass().getName(), uri.getAuthority());
+        }
+        return throwable.toString();
+    }
+
+    private static class Http2Response implements Response {
+        private final HttpResponse<InputStream> response;
+        private final DrainingInputStream body;
+
+        Http2Response(HttpResponse<InputStream> response) {
+            this.response = response;
+            this.body = new DrainingInputStream(response.body());
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String getStatusLine() {
+            return (response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1") + " " + response.statusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void abort() throws IOException {
+            body.abort();
+        }
+    }
+
+    /**
+     * Reads what is left of the body before closing it, otherwise an HTTP/1.1 connection is not returned to the pool.
+     */
+    private static class DrainingInputStream extends FilterInputStream {
+        private boolean closed;
+
+        DrainingInputStream(InputStream in) {
+            super(in);
+        }
+
+        void abort() throws IOException {
+            closed = true;
+            in.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.transferTo(OutputStream.nullOutputStream());
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
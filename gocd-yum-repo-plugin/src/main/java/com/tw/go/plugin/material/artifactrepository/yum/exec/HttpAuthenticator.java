@@ -0,0 +1,198 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.lang.String.format;
+
+/**
+ * Remembers which hosts asked for credentials and how, so later requests to them authenticate up front instead of
+ * paying a 401 round-trip first. Basic credentials are sent as they are; for a Bearer challenge a token is requested
+ * from the realm of the challenge and reused until shortly before it expires.
+ */
+class HttpAuthenticator {
+    static final long DEFAULT_TOKEN_LIFETIME_SECONDS = 60;
+    private static final long EXPIRY_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final Pattern PARAMETER = Pattern.compile("([\\w-]+)\\s*=\\s*(\"([^\"]*)\"|[^,\\s]*)");
+    private static final Logger LOGGER = Logger.getLoggerFor(HttpAuthenticator.class);
+
+    private final TokenEndpoint tokenEndpoint;
+    private final LongSupplier clock;
+    private final Map<String, Challenge> challengesByOrigin = new ConcurrentHashMap<>();
+    private final Map<String, BearerToken> tokens = new ConcurrentHashMap<>();
+
+    HttpAuthenticator(TokenEndpoint tokenEndpoint) {
+        this(tokenEndpoint, System::currentTimeMillis);
+    }
+
+    HttpAuthenticator(TokenEndpoint tokenEndpoint, LongSupplier clock) {
+        this.tokenEndpoint = tokenEndpoint;
+        this.clock = clock;
+    }
+
+    /**
+     * The Authorization header to send up front, or null if the host has not asked for credentials yet.
+     */
+    String authorizationFor(URI uri, Credentials credentials) {
+        if (!credentials.isComplete()) {
+            return null;
+        }
+        Challenge challenge = challengesByOrigin.get(originOf(uri));
+        if (challenge == null) {
+            return null;
+        }
+        return challenge.isBearer() ? "Bearer " + tokenFor(challenge, credentials) : basic(credentials);
+    }
+
+    /**
+     * Records the challenge of a 401 response. Returns whether the request is worth repeating with credentials, which
+     * is not the case if it was already sent with the Basic credentials in question.
+     */
+    boolean challenged(URI uri, Credentials credentials, String wwwAuthenticate, String sentAuthorization) {
+        Challenge challenge = Challenge.parse(wwwAuthenticate);
+        if (challenge == null || !credentials.isComplete()) {
+            return false;
+        }
+        challengesByOrigin.put(originOf(uri), challenge);
+        if (challenge.isBearer()) {
+            tokens.remove(challenge.tokenKey(credentials));
+            return true;
+        }
+        return !basic(credentials).equals(sentAuthorization);
+    }
+
+    private String tokenFor(Challenge challenge, Credentials credentials) {
+        String key = challenge.tokenKey(credentials);
+        BearerToken token = tokens.get(key);
+        if (token != null && clock.getAsLong() < token.expiresAt) {
+            return token.value;
+        }
+        token = requestToken(challenge, credentials);
+        tokens.put(key, token);
+        return token.value;
+    }
+
+    private BearerToken requestToken(Challenge challenge, Credentials credentials) {
+        String realm = challenge.parameters.get("realm");
+        if (realm == null) {
+            throw new RuntimeException("Bearer challenge does not name a realm to request a token from");
+        }
+        StringBuilder url = new StringBuilder(realm);
+        String separator = realm.contains("?") ? "&" : "?";
+        for (String name : new String[]{"service", "scope"}) {
+            if (challenge.parameters.containsKey(name)) {
+                url.append(separator).append(name).append('=').append(encode(challenge.parameters.get(name)));
+                separator = "&";
+            }
+        }
+        long requestedAt = clock.getAsLong();
+        JsonObject response = JsonParser.parseString(tokenEndpoint.get(url.toString(), basic(credentials))).getAsJsonObject();
+        JsonElement value = response.has("token") ? response.get("token") : response.get("access_token");
+        if (value == null) {
+            throw new RuntimeException(format("Token response of %s does not contain a token", realm));
+        }
+        long lifetimeSeconds = response.has("expires_in") ? response.get("expires_in").getAsLong() : DEFAULT_TOKEN_LIFETIME_SECONDS;
+        LOGGER.debug(format("Obtained a bearer token from %s valid for %d seconds", realm, lifetimeSeconds));
+        return new BearerToken(value.getAsString(), requestedAt + TimeUnit.SECONDS.toMillis(lifetimeSeconds) - EXPIRY_MARGIN_MILLIS);
+    }
+
+    private static String basic(Credentials credentials) {
+        String userPass = credentials.getUser() + ":" + credentials.getPassword();
+        return "Basic " + Base64.getEncoder().encodeToString(userPass.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String originOf(URI uri) {
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost().toLowerCase(Locale.ROOT) + ":" + uri.getPort();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    interface TokenEndpoint {
+        String get(String url, String authorization);
+    }
+
+    static class Challenge {
+        private final String scheme;
+        private final Map<String, String> parameters;
+
+        private Challenge(String scheme, Map<String, String> parameters) {
+            this.scheme = scheme;
+            this.parameters = parameters;
+        }
+
+        static Challenge parse(String wwwAuthenticate) {
+            if (wwwAuthenticate == null) {
+                return null;
+            }
+            String header = wwwAuthenticate.trim();
+            int space = header.indexOf(' ');
+            String scheme = (space < 0 ? header : header.substring(0, space)).toLowerCase(Locale.ROOT);
+            if (!scheme.equals("basic") && !scheme.equals("bearer")) {
+                return null;
+            }
+            Map<String, String> parameters = new LinkedHashMap<>();
+            Matcher matcher = PARAMETER.matcher(space < 0 ? "" : header.substring(space + 1));
+            while (matcher.find()) {
+                parameters.put(matcher.group(1).toLowerCase(Locale.ROOT), matcher.group(3) != null ? matcher.group(3) : matcher.group(2));
+            }
+            return new Challenge(scheme, parameters);
+        }
+
+        boolean isBearer() {
+            return scheme.equals("bearer");
+        }
+
+        String tokenKey(Credentials credentials) {
+            return parameters.get("realm") + "\n" + parameters.get("service") + "\n" + parameters.get("scope") + "\n" + credentials.getUser() + "\n" + credentials.getPassword();
+        }
+    }
+
+    private static class BearerToken {
+        private final String value;
+        private final long expiresAt;
+
+        BearerToken(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
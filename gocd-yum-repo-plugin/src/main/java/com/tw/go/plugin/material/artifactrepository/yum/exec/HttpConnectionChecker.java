@@ -14,65 +14,147 @@
  * limitations under the License.
  */
 
+
 package com.tw.go.plugin.material.artifactrepository.yum.exec;
 
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.*;
 
-import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-public class HttpConnectionChecker implements ConnectionChecker {
+public class HttpConnectionChecker implements ConnectionChecker, MetadataFetcher {
+    static final String PROBE_CACHE_PROPERTY = "go.yum.connection.check.cache.seconds";
+    static final long DEFAULT_PROBE_CACHE_SECONDS = 30;
+    // answers of servers that do not implement HEAD, or only sign GET requests
+    private static final Set<Integer> HEAD_REJECTED = new HashSet<>(Arrays.asList(
+            HttpStatus.SC_BAD_REQUEST, HttpStatus.SC_FORBIDDEN, HttpStatus.SC_METHOD_NOT_ALLOWED, HttpStatus.SC_NOT_IMPLEMENTED));
 
-    public void checkConnection(String url, Credentials credentials) {
-        try (CloseableHttpClient client = getHttpClient(credentials)) {
-            HttpGet method = getGetMethod(url);
-            try (CloseableHttpResponse response = client.execute(method)) {
-                if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-                    throw new RuntimeException(response.getStatusLine().toString());
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private final HttpTransport transport;
+    private final long probeCacheMillis;
+    // when successful probes stop being trusted, by URL and credentials
+    private final Map<String, Long> reachableUntil = new ConcurrentHashMap<>();
+
+    public HttpConnectionChecker() {
+        this(HttpTransport.getInstance(), TimeUnit.SECONDS.toMillis(Long.getLong(PROBE_CACHE_PROPERTY, DEFAULT_PROBE_CACHE_SECONDS)));
     }
 
-    HttpGet getGetMethod(String url) {
-        return new HttpGet(url);
+    HttpConnectionChecker(HttpTransport transport) {
+        this(transport, TimeUnit.SECONDS.toMillis(DEFAULT_PROBE_CACHE_SECONDS));
     }
 
-    CloseableHttpClient getHttpClient(Credentials credentials) {
-        BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+    HttpConnectionChecker(HttpTransport transport, long probeCacheMillis) {
+        this.transport = transport;
+        this.probeCacheMillis = probeCacheMillis;
+    }
 
-        if (credentials.isComplete()) {
-            credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(credentials.getUser(), credentials.getPassword()));
+    /**
+     * Only asks whether the URL can be read: a HEAD request, or a GET of the first byte where HEAD is rejected. A
+     * success is remembered for a short while, so repeated checks from the UI do not go to the server each time.
+     * Failures are not, so a check right after fixing the repository or its credentials sees the fix.
+     */
+    public void checkConnection(String url, Credentials credentials) {
+        String key = url + "|" + credentials.digest();
+        long now = System.currentTimeMillis();
+        Long until = reachableUntil.get(key);
+        if (until != null && now < until) {
+            return;
+        }
+        reachableUntil.remove(key);
+        probe(url, credentials);
+        if (probeCacheMillis > 0) {
+            reachableUntil.values().removeIf(cached -> now >= cached);
+            reachableUntil.put(key, now + probeCacheMillis);
         }
+    }
 
-        RequestConfig requestConfig = RequestConfig.custom().
-                setConnectTimeout(getSystemProperty("yum.repo.connection.timeout", 10 * 1000)).
-                setSocketTimeout(getSystemProperty("yum.repo.socket.timeout", 5 * 60 * 1000)).
-                setAuthenticationEnabled(true).
-                setMaxRedirects(10).
-                build();
+    private void probe(String url, Credentials credentials) {
+        boolean headRejected = transport.execute("HEAD", url, credentials, Collections.emptyMap(), response -> {
+            if (HEAD_REJECTED.contains(response.getStatusCode())) {
+                return true;
+            }
+            ensureOk(response);
+            return false;
+        });
+        if (headRejected) {
+            transport.execute("GET", url, credentials, Collections.singletonMap(HttpHeaders.RANGE, "bytes=0-0"), response -> {
+                if (response.getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                    ensureOk(response);
+                }
+                response.abort();
+                return null;
+            });
+        }
+    }
 
-        return HttpClients.custom().
-                setRedirectStrategy(new DefaultRedirectStrategy()).
-                setDefaultCredentialsProvider(credentialsProvider).
-                setDefaultRequestConfig(requestConfig).
-                setTargetAuthenticationStrategy(new TargetAuthenticationStrategy()).
-                build();
+    @Override
+    public <T> T fetch(String url, Credentials credentials, StreamHandler<T> handler) {
+        return transport.execute("GET", url, credentials, Collections.emptyMap(), response -> {
+            ensureOk(response);
+            try (InputStream stream = response.getBody()) {
+                return handler.handle(stream);
+            }
+        });
     }
 
-    private int getSystemProperty(String key, int defaultValue) {
-        try {
-            return Integer.parseInt(System.getProperty(key));
-        } catch (NumberFormatException e) {
-            return defaultValue;
+    @Override
+    public <T> ConditionalResponse<T> fetchIfModified(String url, Credentials credentials, CacheValidators validators, StreamHandler<T> handler) {
+        Map<String, String> headers = new HashMap<>();
+        if (validators.getEtag() != null) {
+            headers.put(HttpHeaders.IF_NONE_MATCH, validators.getEtag());
         }
+        if (validators.getLastModified() != null) {
+            headers.put(HttpHeaders.IF_MODIFIED_SINCE, validators.getLastModified());
+        }
+        return transport.execute("GET", url, credentials, headers, response -> {
+            if (response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && !validators.isEmpty()) {
+                return ConditionalResponse.notModified(validators);
+            }
+            ensureOk(response);
+            CacheValidators current = new CacheValidators(response.getHeader(HttpHeaders.ETAG), response.getHeader(HttpHeaders.LAST_MODIFIED));
+            try (InputStream stream = response.getBody()) {
+                return ConditionalResponse.modified(handler.handle(stream), current);
+            }
+        });
     }
 
+    @Override
+    public boolean fetchRanges(String url, Credentials credentials, List<ByteRange> ranges, RangeConsumer consumer) {
+        String range = "bytes=" + ranges.stream().map(ByteRange::toString).collect(Collectors.joining(","));
+        return transport.execute("GET", url, credentials, Collections.singletonMap(HttpHeaders.RANGE, range), response -> {
+            if (response.getStatusCode() == HttpStatus.SC_OK) {
+                response.abort();
+                return false;
+            }
+            if (response.getStatusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                throw new RuntimeException(response.getStatusLine());
+            }
+            String contentType = response.getHeader(HttpHeaders.CONTENT_TYPE);
+            try (InputStream body = response.getBody()) {
+                if (MultipartByteRanges.isMultipart(contentType)) {
+                    MultipartByteRanges.read(contentType, body, consumer);
+                } else {
+                    ByteRange part = ByteRange.fromContentRange(response.getHeader(HttpHeaders.CONTENT_RANGE));
+                    consumer.accept(part, new BoundedInputStream(body, part.length()));
+                }
+            }
+            return true;
+        });
+    }
+
+    private void ensureOk(HttpTransport.Response response) {
+        if (response.getStatusCode() != HttpStatus.SC_OK) {
+            throw new RuntimeException(response.getStatusLine());
+        }
+    }
 }
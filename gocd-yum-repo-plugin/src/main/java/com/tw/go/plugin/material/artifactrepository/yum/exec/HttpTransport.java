@@ -0,0 +1,192 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The HTTP client shared by every repository check and metadata download of the plugin. By default connections are
+ * pooled and kept alive between polls; {@value #CLIENT_PROPERTY}={@value #HTTP2} switches to a multiplexing HTTP/2
+ * client instead. Redirects and authentication are handled here rather than by the clients, so hosts that asked for
+ * credentials once get them up front from then on.
+ */
+public abstract class HttpTransport {
+    public static final String CLIENT_PROPERTY = "go.yum.http.client";
+    public static final String POOLED = "pooled";
+    public static final String HTTP2 = "http2";
+    static final String CONNECTION_TIMEOUT_PROPERTY = "yum.repo.connection.timeout";
+    static final String SOCKET_TIMEOUT_PROPERTY = "yum.repo.socket.timeout";
+    static final int DEFAULT_CONNECTION_TIMEOUT_MILLIS = 10 * 1000;
+    static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    static final int MAX_REDIRECTS = 10;
+    private static final Set<Integer> REDIRECTS = new HashSet<>(Arrays.asList(301, 302, 303, 307, 308));
+
+    private static volatile HttpTransport instance;
+
+    public static HttpTransport getInstance() {
+        if (instance == null) {
+            synchronized (HttpTransport.class) {
+                if (instance == null) {
+                    instance = forName(System.getProperty(CLIENT_PROPERTY, POOLED));
+                }
+            }
+        }
+        return instance;
+    }
+
+    static HttpTransport forName(String name) {
+        if (POOLED.equalsIgnoreCase(name)) {
+            return new PooledHttpTransport();
+        }
+        if (HTTP2.equalsIgnoreCase(name)) {
+            return new Http2Transport();
+        }
+        throw new IllegalArgumentException(String.format("Unknown HTTP client '%s'. Supported values are '%s' and '%s'.", name, POOLED, HTTP2));
+    }
+
+    private final HttpAuthenticator authenticator = new HttpAuthenticator(this::getToken);
+
+    /**
+     * Sends the request, following redirects and answering Basic and Bearer challenges with the credentials, and hands
+     * the final response to the handler. Whatever the handler leaves unread of a successfully handled response is
+     * drained so the connection can be reused. I/O failures are rethrown as RuntimeException.
+     */
+    public <T> T execute(String method, String url, Credentials credentials, Map<String, String> headers, ResponseHandler<T> handler) {
+        URI uri = URI.create(url);
+        boolean challenged = false;
+        for (int redirects = 0; ; ) {
+            URI target = uri;
+            Map<String, String> requestHeaders = new HashMap<>(headers);
+            String authorization = authenticator.authorizationFor(target, credentials);
+            if (authorization != null) {
+                requestHeaders.put(HttpHeaders.AUTHORIZATION, authorization);
+            }
+            boolean mayRetry = !challenged;
+            Outcome<T> outcome = send(method, target.toString(), requestHeaders, response -> {
+                int statusCode = response.getStatusCode();
+                String location = response.getHeader(HttpHeaders.LOCATION);
+                if (REDIRECTS.contains(statusCode) && location != null) {
+                    return Outcome.redirectTo(target.resolve(location));
+                }
+                if (statusCode == HttpStatus.SC_UNAUTHORIZED && mayRetry
+                        && authenticator.challenged(target, credentials, response.getHeader(HttpHeaders.WWW_AUTHENTICATE), authorization)) {
+                    return Outcome.retry();
+                }
+                return Outcome.of(handler.handle(response));
+            });
+            if (outcome.retry) {
+                challenged = true;
+            } else if (outcome.redirect != null) {
+                if (++redirects > MAX_REDIRECTS) {
+                    throw new RuntimeException(String.format("Maximum redirects (%d) exceeded for %s", MAX_REDIRECTS, url));
+                }
+                uri = outcome.redirect;
+                challenged = false;
+            } else {
+                return outcome.result;
+            }
+        }
+    }
+
+    /**
+     * Sends a single request without following redirects or answering challenges.
+     */
+    abstract <T> T send(String method, String url, Map<String, String> headers, ResponseHandler<T> handler);
+
+    private String getToken(String url, String authorization) {
+        return send("GET", url, Collections.singletonMap(HttpHeaders.AUTHORIZATION, authorization), response -> {
+            if (response.getStatusCode() != HttpStatus.SC_OK) {
+                throw new RuntimeException(String.format("Could not obtain a bearer token: %s", response.getStatusLine()));
+            }
+            try (InputStream body = response.getBody()) {
+                return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        });
+    }
+
+    static int connectionTimeoutMillis() {
+        return intProperty(CONNECTION_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_TIMEOUT_MILLIS);
+    }
+
+    static int socketTimeoutMillis() {
+        return intProperty(SOCKET_TIMEOUT_PROPERTY, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+    }
+
+    private static int intProperty(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(key));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class Outcome<T> {
+        private final T result;
+        private final URI redirect;
+        private final boolean retry;
+
+        private Outcome(T result, URI redirect, boolean retry) {
+            this.result = result;
+            this.redirect = redirect;
+            this.retry = retry;
+        }
+
+        static <T> Outcome<T> of(T result) {
+            return new Outcome<>(result, null, false);
+        }
+
+        static <T> Outcome<T> redirectTo(URI location) {
+            return new Outcome<>(null, location, false);
+        }
+
+        static <T> Outcome<T> retry() {
+            return new Outcome<>(null, null, true);
+        }
+    }
+
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    public interface Response {
+        int getStatusCode();
+
+        String getStatusLine();
+
+        String getHeader(String name);
+
+        InputStream getBody() throws IOException;
+
+        /**
+         * Gives up on the rest of the body: the connection is closed rather than drained for reuse.
+         */
+        void abort() throws IOException;
+    }
+}
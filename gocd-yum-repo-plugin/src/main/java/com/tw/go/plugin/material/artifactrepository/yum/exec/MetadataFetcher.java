@@ -0,0 +1,41 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+public interface MetadataFetcher {
+    <T> T fetch(String url, Credentials credentials, StreamHandler<T> handler);
+
+    <T> ConditionalResponse<T> fetchIfModified(String url, Credentials credentials, CacheValidators validators, StreamHandler<T> handler);
+
+    /**
+     * Reads only the given ranges of the file, handing every part to the consumer as it arrives; parts may be merged or
+     * come in any order. Returns false without consuming anything if the server does not serve ranges.
+     */
+    boolean fetchRanges(String url, Credentials credentials, List<ByteRange> ranges, RangeConsumer consumer);
+
+    interface StreamHandler<T> {
+        T handle(InputStream stream) throws IOException;
+    }
+
+    interface RangeConsumer {
+        void accept(ByteRange range, InputStream part) throws IOException;
+    }
+}
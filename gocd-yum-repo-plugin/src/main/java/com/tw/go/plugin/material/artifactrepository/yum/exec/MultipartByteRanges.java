@@ -0,0 +1,87 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a multipart/byteranges body (RFC 7233) into its parts without buffering them.
+ */
+class MultipartByteRanges {
+    private static final Pattern BOUNDARY = Pattern.compile(";\\s*boundary=(\"([^\"]+)\"|[^;\\s]+)", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+
+    static boolean isMultipart(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT).startsWith("multipart/byteranges");
+    }
+
+    static void read(String contentType, InputStream body, MetadataFetcher.RangeConsumer consumer) throws IOException {
+        Matcher matcher = BOUNDARY.matcher(contentType);
+        if (!matcher.find()) {
+            throw new IOException(String.format("No boundary in Content-Type '%s'", contentType));
+        }
+        String delimiter = "--" + (matcher.group(2) != null ? matcher.group(2) : matcher.group(1));
+        while (true) {
+            String line = readLine(body);
+            if (line == null || line.equals(delimiter + "--")) {
+                return;
+            }
+            if (!line.equals(delimiter)) {
+                continue;
+            }
+            String contentRange = null;
+            for (String header = readLine(body); header != null && !header.isEmpty(); header = readLine(body)) {
+                int colon = header.indexOf(':');
+                if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Range")) {
+                    contentRange = header.substring(colon + 1).trim();
+                }
+            }
+            ByteRange range = ByteRange.fromContentRange(contentRange);
+            BoundedInputStream part = new BoundedInputStream(body, range.length());
+            part.setPropagateClose(false);
+            consumer.accept(range, part);
+            // whatever the consumer left unread, so the next delimiter is found
+            part.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line of multipart/byteranges body too long");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String value = new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+        return value.endsWith("\r") ? value.substring(0, value.length() - 1) : value;
+    }
+}
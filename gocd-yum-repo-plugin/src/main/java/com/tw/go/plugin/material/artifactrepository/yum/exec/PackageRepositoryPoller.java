@@ -17,9 +17,13 @@ package com.tw.go.plugin.material.artifactrepository.yum.exec;
 
 import com.thoughtworks.go.plugin.api.logging.Logger;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.command.MultiplePackageException;
-import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.PackageQueryEngine;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.PackageQueryEngines;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.*;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.MetadataGeneration;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.RepositoryRegistry;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.RpmVersionComparator;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import java.util.ArrayList;
@@ -34,9 +38,18 @@ public class PackageRepositoryPoller {
 
 
     private PackageRepositoryConfigurationProvider configurationProvider;
+    private final PackageQueryEngine queryEngine;
+    private final RepositoryRegistry registry = RepositoryRegistry.getInstance();
+    private final RevisionCache revisionCache = new RevisionCache();
+    private final SingleFlight<String, PackageRevisionMessage> latestRevisions = new SingleFlight<>();
 
     public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider) {
+        this(configurationProvider, PackageQueryEngines.fromSystemProperties());
+    }
+
+    public PackageRepositoryPoller(PackageRepositoryConfigurationProvider configurationProvider, PackageQueryEngine queryEngine) {
         this.configurationProvider = configurationProvider;
+        this.queryEngine = queryEngine;
     }
 
     public CheckConnectionResultMessage checkConnectionToRepository(PackageMaterialProperties repositoryConfiguration) {
@@ -79,17 +92,57 @@ public class PackageRepositoryPoller {
         validateData(packageConfiguration, repositoryConfiguration);
         PackageMaterialProperty packageSpec = packageConfiguration.getProperty(Constants.PACKAGE_SPEC);
         RepoUrl url = repoUrl(repositoryConfiguration);
-        url.checkConnection();
-        return executeRepoQuery(DigestUtils.md5Hex(url.forDisplay()), url, packageSpec);
+        // identical requests that arrive while one is being answered share its outcome
+        return latestRevisions.run(url.sharingKey() + "|" + packageSpec.value(), () -> resolveLatestRevision(url, packageSpec));
+    }
+
+    private PackageRevisionMessage resolveLatestRevision(RepoUrl url, PackageMaterialProperty packageSpec) {
+        String repoId = DigestUtils.md5Hex(url.forDisplay());
+        // the one repomd.xml request of a poll; engines that read metadata in-process are handed the result, while
+        // repoquery fetches repomd.xml itself and so is neither delayed nor failed by a fetch of its own here
+        MetadataGeneration metadata = queryEngine.readsRepositoryMetadata() ? registry.currentGeneration(url) : null;
+        String metadataVersion = metadata == null ? null : metadata.getMetadata().getPrimaryVersion();
+        if (metadataVersion != null) {
+            PackageRevisionMessage cached = revisionCache.get(url.sharingKey(), packageSpec.value(), metadataVersion);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        PackageRevisionMessage revision = queryEngine.query(new RepoQueryParams(repoId, url, packageSpec.value(), metadata));
+        // a rejected generation was answered from older metadata, which must not be cached under its version
+        if (metadataVersion != null && !metadata.isRejected()) {
+            revisionCache.put(url.sharingKey(), packageSpec.value(), metadataVersion, revision);
+            LOGGER.debug(String.format("Resolved '%s' of %s: %s", packageSpec.value(), url.forDisplay(), revisionCache));
+        }
+        return revision;
     }
 
     public PackageRevisionMessage getLatestRevisionSince(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration, PackageRevisionMessage previousPackageRevision) {
         PackageRevisionMessage latestRevision = getLatestRevision(packageConfiguration, repositoryConfiguration);
-        if (latestRevision.getTimestamp().getTime() > previousPackageRevision.getTimestamp().getTime())
+        if (isNewer(latestRevision, previousPackageRevision))
             return latestRevision;
         return null;
     }
 
+    /**
+     * Orders two revisions of the same name.arch by epoch:version-release, so that a rebuild of an older version is
+     * not picked up as a new revision. Revisions of different packages, and rebuilds of the same EVR, are ordered by
+     * build time.
+     */
+    private boolean isNewer(PackageRevisionMessage latestRevision, PackageRevisionMessage previousPackageRevision) {
+        if (latestRevision.getRevision() != null && previousPackageRevision.getRevision() != null) {
+            Integer byEvr = RpmVersionComparator.compareLabels(latestRevision.getRevision(), epochOf(latestRevision), previousPackageRevision.getRevision(), epochOf(previousPackageRevision));
+            if (byEvr != null && byEvr != 0) {
+                return byEvr > 0;
+            }
+        }
+        return latestRevision.getTimestamp().getTime() > previousPackageRevision.getTimestamp().getTime();
+    }
+
+    private String epochOf(PackageRevisionMessage revision) {
+        return revision.getData() == null ? null : revision.getDataFor(Constants.PACKAGE_EPOCH);
+    }
+
 
     private void validateData(PackageMaterialProperties packageConfiguration, PackageMaterialProperties repositoryConfiguration) {
         ValidationResultMessage repoValidationResultMessage = configurationProvider.validateRepositoryConfiguration(repositoryConfiguration);
@@ -104,8 +157,12 @@ public class PackageRepositoryPoller {
         }
     }
 
-    private PackageRevisionMessage executeRepoQuery(String repoId, RepoUrl url, PackageMaterialProperty packageSpec) {
-        return new RepoQueryCommand(new RepoQueryParams(repoId, url, packageSpec.value())).execute();
+    public RevisionCache getRevisionCache() {
+        return revisionCache;
+    }
+
+    long getCoalescedRequests() {
+        return latestRevisions.getCoalesced();
     }
 
     private RepoUrl repoUrl(PackageMaterialProperties packageMaterialProperties) {
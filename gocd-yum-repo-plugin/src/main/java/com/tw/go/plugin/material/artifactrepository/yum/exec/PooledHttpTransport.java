@@ -0,0 +1,136 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Apache HttpClient over a connection pool for the lifetime of the plugin. Keeping connections alive saves the
+ * TCP and TLS handshakes between polls, and the single SSL context lets new connections resume earlier TLS sessions.
+ * Connections carry no user state, so they are shared between repositories of the same host whatever their credentials.
+ */
+class PooledHttpTransport extends HttpTransport {
+    static final String MAX_CONNECTIONS_PROPERTY = "go.yum.http.max.connections";
+    static final String MAX_CONNECTIONS_PER_ROUTE_PROPERTY = "go.yum.http.max.connections.per.route";
+    static final String IDLE_TIMEOUT_PROPERTY = "go.yum.http.idle.timeout.seconds";
+    static final int DEFAULT_MAX_CONNECTIONS = 20;
+    static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 5;
+    static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+
+    PooledHttpTransport() {
+        this(Integer.getInteger(MAX_CONNECTIONS_PROPERTY, DEFAULT_MAX_CONNECTIONS),
+                Integer.getInteger(MAX_CONNECTIONS_PER_ROUTE_PROPERTY, DEFAULT_MAX_CONNECTIONS_PER_ROUTE),
+                Long.getLong(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT_SECONDS));
+    }
+
+    PooledHttpTransport(int maxConnections, int maxConnectionsPerRoute, long idleTimeoutSeconds) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        client = HttpClients.custom().
+                setConnectionManager(connectionManager).
+                disableRedirectHandling().
+                evictExpiredConnections().
+                evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS).
+                disableConnectionState().
+                build();
+    }
+
+    @Override
+    <T> T send(String method, String url, Map<String, String> headers, ResponseHandler<T> handler) {
+        RequestBuilder builder = RequestBuilder.create(method).setUri(url).setConfig(RequestConfig.custom().
+                setConnectTimeout(connectionTimeoutMillis()).
+                setSocketTimeout(socketTimeoutMillis()).
+                setAuthenticationEnabled(false).
+                build());
+        headers.forEach(builder::setHeader);
+        HttpUriRequest request = builder.build();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            PooledResponse pooledResponse = new PooledResponse(response);
+            T result = handler.handle(pooledResponse);
+            if (!pooledResponse.aborted) {
+                EntityUtils.consume(response.getEntity());
+            }
+            return result;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    private static class PooledResponse implements Response {
+        private final CloseableHttpResponse response;
+        private boolean aborted;
+
+        PooledResponse(CloseableHttpResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String getStatusLine() {
+            return response.getStatusLine().toString();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            HttpEntity entity = response.getEntity();
+            return entity == null ? new ByteArrayInputStream(new byte[0]) : entity.getContent();
+        }
+
+        @Override
+        public void abort() throws IOException {
+            aborted = true;
+            response.close();
+        }
+    }
+}
@@ -22,14 +22,19 @@ import com.tw.go.plugin.material.artifactrepository.yum.exec.message.ValidationR
 
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.regex.Pattern;
 
 public class RepoUrl {
     private final String url;
     private Credentials credentials;
     private static HashMap<String, ConnectionChecker> map = new HashMap<String, ConnectionChecker>();
+    private static HashMap<String, MetadataFetcher> fetchers = new HashMap<String, MetadataFetcher>();
     private static FileBasedConnectionChecker fileBasedConnectionChecker = new FileBasedConnectionChecker();
     private static HttpConnectionChecker httpConnectionChecker = new HttpConnectionChecker();
 
@@ -37,6 +42,9 @@ public class RepoUrl {
         map.put("file", fileBasedConnectionChecker);
         map.put("http", httpConnectionChecker);
         map.put("https", httpConnectionChecker);
+        fetchers.put("file", fileBasedConnectionChecker);
+        fetchers.put("http", httpConnectionChecker);
+        fetchers.put("https", httpConnectionChecker);
     }
 
     public RepoUrl(String url, String user, String password) {
@@ -79,6 +87,14 @@ public class RepoUrl {
         }
     }
 
+    MetadataFetcher getFetcher() {
+        try {
+            return fetchers.get(new URL(url).getProtocol());
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Invalid URL: " + e);
+        }
+    }
+
 
     public String getUrlWithBasicAuth() {
         String localUrl = this.url;
@@ -101,10 +117,54 @@ public class RepoUrl {
         getChecker().checkConnection(getRepoMetadataUrl(), credentials);
     }
 
+    public <T> T fetch(String relativePath, MetadataFetcher.StreamHandler<T> handler) {
+        return getFetcher().fetch(getRepoBaseUrl() + "/" + relativePath, credentials, handler);
+    }
+
+    public <T> ConditionalResponse<T> fetchIfModified(String relativePath, CacheValidators validators, MetadataFetcher.StreamHandler<T> handler) {
+        return getFetcher().fetchIfModified(getRepoBaseUrl() + "/" + relativePath, credentials, validators, handler);
+    }
+
+    public boolean fetchRanges(String relativePath, List<ByteRange> ranges, MetadataFetcher.RangeConsumer consumer) {
+        return getFetcher().fetchRanges(getRepoBaseUrl() + "/" + relativePath, credentials, ranges, consumer);
+    }
+
+    public boolean isLocal() {
+        return getFetcher() instanceof FileBasedConnectionChecker;
+    }
+
     public String getRepoMetadataUrl() {
+        return getRepoBaseUrl() + "/repodata/repomd.xml";
+    }
+
+    public String getRepoBaseUrl() {
         Pattern pattern = Pattern.compile("(.*?)(/+)$");
-        String urlStrippedOfTrailingSlashes = pattern.matcher(url).replaceAll("$1");
-        return urlStrippedOfTrailingSlashes + "/repodata/repomd.xml";
+        return pattern.matcher(url).replaceAll("$1");
+    }
+
+    public String canonical() {
+        try {
+            URI uri = new URI(getRepoBaseUrl()).normalize();
+            String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+            String host = uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getPath() == null ? "" : uri.getPath().replaceAll("/{2,}", "/").replaceAll("/+$", "");
+            return new URI(scheme, null, host, port, path, uri.getQuery(), null).toString();
+        } catch (URISyntaxException e) {
+            return getRepoBaseUrl();
+        }
+    }
+
+    /**
+     * The canonical URL, qualified by a digest of the credentials if there are any. Metadata and revisions are only
+     * shared between materials with the same key, so no material is answered with what another material's credentials
+     * fetched.
+     */
+    public String sharingKey() {
+        return credentials.isPresent() ? canonical() + "#" + credentials.digest() : canonical();
     }
 
     public String forDisplay() {
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.lang.String.format;
+
+/**
+ * Process-wide read/write locks keyed by repository. Keys are spread over a fixed number of fair lock stripes, so the
+ * number of locks does not grow with the number of repositories. Waiting is bounded by a timeout, and the queue depth
+ * and wait times of every key are recorded.
+ * <p>
+ * Locks must not be nested: two keys may share a stripe, and a read lock cannot be upgraded to a write lock. A lease
+ * has to be closed by the thread that acquired it.
+ */
+public class RepositoryLockManager {
+    public static final String TIMEOUT_PROPERTY = "go.yum.lock.timeout.seconds";
+    public static final long DEFAULT_TIMEOUT_SECONDS = 600;
+    static final int STRIPES = 64;
+    static final int MAX_TRACKED_KEYS = 1024;
+    static final String OTHER_KEYS = "*";
+    /**
+     * Upper bounds, in milliseconds, of the buckets of the wait time histograms. The last bucket is unbounded.
+     */
+    public static final long[] WAIT_BUCKETS_MILLIS = {1, 10, 100, 1000, 10000, 60000};
+    private static final RepositoryLockManager INSTANCE = new RepositoryLockManager(TimeUnit.SECONDS.toMillis(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS)));
+
+    public enum Mode {
+        READ, WRITE
+    }
+
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+    private final ConcurrentMap<String, LockStats> stats = new ConcurrentHashMap<>();
+    private final long defaultTimeoutMillis;
+
+    RepositoryLockManager(long defaultTimeoutMillis) {
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock(true);
+        }
+    }
+
+    public static RepositoryLockManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits for the lock up to the configured timeout.
+     *
+     * @throws RuntimeException if the lock could not be acquired in time
+     */
+    public Lease acquire(String key, Mode mode) {
+        try {
+            Lease lease = tryAcquire(key, mode, defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (lease == null) {
+                throw new RuntimeException(format("Timed out after %d ms waiting for the %s lock of %s", defaultTimeoutMillis, mode.name().toLowerCase(), key));
+            }
+            return lease;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(format("Interrupted while waiting for the %s lock of %s", mode.name().toLowerCase(), key));
+        }
+    }
+
+    /**
+     * @return the held lock, or null if it could not be acquired within the timeout
+     */
+    public Lease tryAcquire(String key, Mode mode, long timeout, TimeUnit unit) throws InterruptedException {
+        ReentrantReadWriteLock stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+        Lock lock = mode == Mode.READ ? stripe.readLock() : stripe.writeLock();
+        LockStats lockStats = statsFor(key);
+        long start = System.nanoTime();
+        lockStats.waiting.incrementAndGet();
+        boolean acquired = false;
+        try {
+            acquired = lock.tryLock(timeout, unit);
+        } finally {
+            lockStats.waiting.decrementAndGet();
+            lockStats.recordWait(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), acquired);
+        }
+        if (!acquired) {
+            return null;
+        }
+        lockStats.held.incrementAndGet();
+        return new Lease(lock, lockStats);
+    }
+
+    public LockStats getStats(String key) {
+        LockStats lockStats = stats.get(key);
+        return lockStats != null ? lockStats : stats.get(OTHER_KEYS);
+    }
+
+    private LockStats statsFor(String key) {
+        LockStats lockStats = stats.get(key);
+        if (lockStats != null) {
+            return lockStats;
+        }
+        if (stats.size() >= MAX_TRACKED_KEYS) {
+            return stats.computeIfAbsent(OTHER_KEYS, k -> new LockStats());
+        }
+        return stats.computeIfAbsent(key, k -> new LockStats());
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Lock lock;
+        private final LockStats stats;
+        private boolean released;
+
+        private Lease(Lock lock, LockStats stats) {
+            this.lock = lock;
+            this.stats = stats;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                stats.held.decrementAndGet();
+                lock.unlock();
+            }
+        }
+    }
+
+    public static class LockStats {
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicInteger held = new AtomicInteger();
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong totalWaitMillis = new AtomicLong();
+        private final AtomicLong maxWaitMillis = new AtomicLong();
+        private final AtomicLongArray waitHistogram = new AtomicLongArray(WAIT_BUCKETS_MILLIS.length + 1);
+
+        void recordWait(long millis, boolean acquired) {
+            if (acquired) {
+                acquisitions.incrementAndGet();
+            } else {
+                timeouts.incrementAndGet();
+            }
+            totalWaitMillis.addAndGet(millis);
+            maxWaitMillis.accumulateAndGet(millis, Math::max);
+            int bucket = 0;
+            while (bucket < WAIT_BUCKETS_MILLIS.length && millis > WAIT_BUCKETS_MILLIS[bucket]) {
+                bucket++;
+            }
+            waitHistogram.incrementAndGet(bucket);
+        }
+
+        public int getQueueDepth() {
+            return waiting.get();
+        }
+
+        public int getHolders() {
+            return held.get();
+        }
+
+        public long getAcquisitions() {
+            return acquisitions.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getTotalWaitMillis() {
+            return totalWaitMillis.get();
+        }
+
+        public long getMaxWaitMillis() {
+            return maxWaitMillis.get();
+        }
+
+        /**
+         * @return the number of waits per bucket of {@link #WAIT_BUCKETS_MILLIS}, plus one for longer waits
+         */
+        public long[] getWaitHistogram() {
+            long[] counts = new long[waitHistogram.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = waitHistogram.get(i);
+            }
+            return counts;
+        }
+
+        @Override
+        public String toString() {
+            return format("LockStats{queueDepth=%d, holders=%d, acquisitions=%d, timeouts=%d, totalWaitMillis=%d, maxWaitMillis=%d}",
+                    getQueueDepth(), getHolders(), getAcquisitions(), getTimeouts(), getTotalWaitMillis(), getMaxWaitMillis());
+        }
+    }
+}
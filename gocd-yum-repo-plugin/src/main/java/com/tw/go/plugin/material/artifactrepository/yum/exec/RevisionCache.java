@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * Resolved revisions keyed by {@link RepoUrl#sharingKey()} and package spec, valid for one checksum of the repository's
+ * primary metadata. The first lookup with a different checksum drops every entry of that repository. The least
+ * recently used entries are evicted once the cache is full.
+ */
+public class RevisionCache {
+    static final String SIZE_PROPERTY = "go.yum.revision.cache.size";
+    static final int DEFAULT_SIZE = 4096;
+    private static final Logger LOGGER = Logger.getLoggerFor(RevisionCache.class);
+
+    private final int maxEntries;
+    private final Map<String, CachedRevision> entries;
+    private final Map<String, String> checksums = new HashMap<>();
+    private final Map<String, Set<String>> keysByRepository = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    RevisionCache() {
+        this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    RevisionCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CachedRevision>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRevision> eldest) {
+                if (size() <= RevisionCache.this.maxEntries) {
+                    return false;
+                }
+                evictions++;
+                unindex(eldest.getValue().repository, eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    synchronized PackageRevisionMessage get(String repository, String packageSpec, String checksum) {
+        invalidateIfChanged(repository, checksum);
+        CachedRevision entry = entries.get(key(repository, packageSpec));
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.revision;
+    }
+
+    synchronized void put(String repository, String packageSpec, String checksum, PackageRevisionMessage revision) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        invalidateIfChanged(repository, checksum);
+        String key = key(repository, packageSpec);
+        checksums.put(repository, checksum);
+        keysByRepository.computeIfAbsent(repository, r -> new HashSet<>()).add(key);
+        entries.put(key, new CachedRevision(repository, revision));
+    }
+
+    private void invalidateIfChanged(String repository, String checksum) {
+        String current = checksums.get(repository);
+        if (current == null || current.equals(checksum)) {
+            return;
+        }
+        Set<String> keys = keysByRepository.remove(repository);
+        checksums.remove(repository);
+        if (keys != null) {
+            entries.keySet().removeAll(keys);
+            invalidations += keys.size();
+            LOGGER.debug(format("Primary metadata of %s changed, dropped %d cached revisions", repository, keys.size()));
+        }
+    }
+
+    private void unindex(String repository, String key) {
+        Set<String> keys = keysByRepository.get(repository);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByRepository.remove(repository);
+            checksums.remove(repository);
+        }
+    }
+
+    private static String key(String repository, String packageSpec) {
+        return repository + "\n" + packageSpec.trim();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return format("RevisionCache{size=%d, hits=%d, misses=%d, evictions=%d, invalidations=%d}", entries.size(), hits, misses, evictions, invalidations);
+    }
+
+    private static class CachedRevision {
+        private final String repository;
+        private final PackageRevisionMessage revision;
+
+        private CachedRevision(String repository, PackageRevisionMessage revision) {
+            this.repository = repository;
+            this.revision = revision;
+        }
+    }
+}
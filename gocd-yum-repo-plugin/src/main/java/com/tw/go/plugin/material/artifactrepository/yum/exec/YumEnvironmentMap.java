@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class YumEnvironmentMap {
+    public static final String DIRECTORY_PREFIX = "go-yum-plugin-";
 
     final String defaultTempYumRepoDir = "/var/tmp";
     final String HOME = "HOME";
@@ -55,9 +56,13 @@ public class YumEnvironmentMap {
         return homeEnv;
     }
 
-    private String getTempRepoFilePath() {
-        File temporaryRepoFileLocation = new File(getSystemPropertyValueFor("go.yum.tmpdir", defaultTempYumRepoDir), String.format("go-yum-plugin-%s", packageRepoId));
+    public String getTempRepoFilePath() {
+        File temporaryRepoFileLocation = new File(getTempRoot(), DIRECTORY_PREFIX + packageRepoId);
         temporaryRepoFileLocation.mkdirs();
         return temporaryRepoFileLocation.getAbsolutePath();
     }
+
+    public File getTempRoot() {
+        return new File(getSystemPropertyValueFor("go.yum.tmpdir", defaultTempYumRepoDir));
+    }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import static java.lang.String.format;
+
+public class FallbackQueryEngine implements PackageQueryEngine {
+    private static final Logger LOGGER = Logger.getLoggerFor(FallbackQueryEngine.class);
+    private final PackageQueryEngine primary;
+    private final PackageQueryEngine fallback;
+
+    public FallbackQueryEngine(PackageQueryEngine primary, PackageQueryEngine fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public PackageRevisionMessage query(RepoQueryParams params) {
+        try {
+            return primary.query(params);
+        } catch (UnsupportedMetadataException e) {
+            LOGGER.info(format("Falling back to %s for repository '%s'. %s", fallback.getClass().getSimpleName(), params.getRepoUrl(), e.getMessage()));
+            return fallback.query(params);
+        }
+    }
+
+    @Override
+    public boolean readsRepositoryMetadata() {
+        return primary.readsRepositoryMetadata() || fallback.readsRepositoryMetadata();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.YumEnvironmentMap;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * Runs repoquery commands on a pool of long-lived helper processes instead of forking repoquery for each of them, so
+ * that neither the interpreter start-up nor loading the repository metadata is paid on every poll. Resolution is
+ * still done by yum/dnf itself. Commands that are not repoquery invocations, and any request the helpers cannot
+ * serve, are run by forking as before.
+ * <p>
+ * Enabled with {@code -Dgo.yum.repoquery.mode=helper}.
+ */
+public class HelperProcessRunner extends ProcessRunner {
+    public static final String MODE_PROPERTY = "go.yum.repoquery.mode";
+    public static final String HELPER = "helper";
+    public static final String POOL_SIZE_PROPERTY = "go.yum.repoquery.helper.pool.size";
+    public static final String TIMEOUT_PROPERTY = "go.yum.repoquery.helper.timeout.seconds";
+    public static final String PYTHON_PROPERTY = "go.yum.repoquery.helper.python";
+    public static final String SESSIONS_PROPERTY = "go.yum.repoquery.helper.sessions";
+    /**
+     * Environment entry carrying the version of the repomd.xml fetched for the poll, so that a helper need not fetch
+     * it again to tell whether its loaded session is current. Forked repoquery ignores it.
+     */
+    static final String REVISION_ENV = "GO_YUM_REPOMD_REVISION";
+    static final String SCRIPT = "repoquery-helper.py";
+    private static final long RETRY_START_AFTER_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final Logger LOGGER = Logger.getLoggerFor(HelperProcessRunner.class);
+    private static volatile HelperProcessRunner instance;
+
+    private final RepoQueryHelperPool pool;
+    private final long timeoutMillis;
+    private volatile long unavailableUntil;
+
+    HelperProcessRunner(RepoQueryHelperPool pool, long timeoutMillis) {
+        this.pool = pool;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static boolean isEnabled() {
+        return HELPER.equalsIgnoreCase(System.getProperty(MODE_PROPERTY));
+    }
+
+    public static HelperProcessRunner getInstance() {
+        if (instance == null) {
+            synchronized (HelperProcessRunner.class) {
+                if (instance == null) {
+                    instance = new HelperProcessRunner(new RepoQueryHelperPool(candidateCommands(), Integer.getInteger(POOL_SIZE_PROPERTY, 2)),
+                            TimeUnit.SECONDS.toMillis(Long.getLong(TIMEOUT_PROPERTY, 120)));
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public ProcessOutput execute(String[] command, Map<String, String> envMap, Consumer<String> stdOutConsumer) {
+        Invocation invocation = Invocation.parse(command);
+        if (invocation == null || System.currentTimeMillis() < unavailableUntil) {
+            return super.execute(command, envMap, stdOutConsumer);
+        }
+        String cacheDir = envMap == null || envMap.get("TMPDIR") == null ? System.getProperty("java.io.tmpdir") : envMap.get("TMPDIR");
+        String revision = envMap == null || envMap.get(REVISION_ENV) == null ? "" : envMap.get(REVISION_ENV);
+        ProcessOutput output;
+        try {
+            output = pool.withHelper(timeoutMillis, helper -> helper.query(invocation.repoId, invocation.repoUrl, cacheDir, revision, invocation.showDuplicates, invocation.queryFormat, invocation.packageSpecs, timeoutMillis));
+        } catch (IllegalArgumentException e) {
+            // a request the helper protocol cannot express
+            return super.execute(command, envMap, stdOutConsumer);
+        } catch (IOException e) {
+            if (pool.getStarted() == 0) {
+                unavailableUntil = System.currentTimeMillis() + RETRY_START_AFTER_MILLIS;
+            }
+            LOGGER.warn(format("Repoquery helper failed, running repoquery directly. %s", e.getMessage()));
+            return super.execute(command, envMap, stdOutConsumer);
+        }
+        output.getStdOut().forEach(stdOutConsumer);
+        return new ProcessOutput(output.getReturnCode(), new ArrayList<>(), output.getStdErr());
+    }
+
+    RepoQueryHelperPool getPool() {
+        return pool;
+    }
+
+    private static List<List<String>> candidateCommands() {
+        String script;
+        try {
+            script = extractScript().getAbsolutePath();
+        } catch (IOException e) {
+            LOGGER.warn("Could not extract repoquery helper: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        String python = System.getProperty(PYTHON_PROPERTY);
+        List<String> interpreters = python != null ? Collections.singletonList(python)
+                : Arrays.asList("/usr/libexec/platform-python", "python3", "python2", "python");
+        List<List<String>> commands = new ArrayList<>();
+        String sessions = String.valueOf(Integer.getInteger(SESSIONS_PROPERTY, 8));
+        for (String interpreter : interpreters) {
+            commands.add(Arrays.asList(interpreter, "-u", script, sessions));
+        }
+        return commands;
+    }
+
+    private static File extractScript() throws IOException {
+        File directory = new File(new YumEnvironmentMap("helper").getTempRepoFilePath());
+        File script = new File(directory, SCRIPT);
+        try (InputStream resource = HelperProcessRunner.class.getResourceAsStream(SCRIPT)) {
+            if (resource == null) {
+                throw new IOException(SCRIPT + " not found on the classpath");
+            }
+            File temp = File.createTempFile("repoquery-helper", ".py", directory);
+            Files.write(temp.toPath(), IOUtils.toByteArray(resource));
+            Files.move(temp.toPath(), script.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return script;
+    }
+
+    /**
+     * The arguments of a repoquery command line as built by {@link RepoQueryCommand}.
+     */
+    static class Invocation {
+        String repoId;
+        String repoUrl;
+        boolean showDuplicates;
+        String queryFormat;
+        final List<String> packageSpecs = new ArrayList<>();
+
+        static Invocation parse(String[] command) {
+            if (command.length == 0 || !"repoquery".equals(command[0])) {
+                return null;
+            }
+            Invocation invocation = new Invocation();
+            for (int i = 1; i < command.length; i++) {
+                String argument = command[i];
+                if (argument.startsWith("--repofrompath=") && argument.indexOf(',') > 0) {
+                    invocation.repoUrl = argument.substring(argument.indexOf(',') + 1);
+                } else if (argument.startsWith("--repoid=")) {
+                    invocation.repoId = argument.substring("--repoid=".length());
+                } else if (argument.equals("--show-duplicates")) {
+                    invocation.showDuplicates = true;
+                } else if (argument.equals("--qf") && i + 1 < command.length) {
+                    invocation.queryFormat = command[++i];
+                } else if (argument.equals("-q")) {
+                    continue;
+                } else if (argument.startsWith("-")) {
+                    return null;
+                } else {
+                    invocation.packageSpecs.add(argument);
+                }
+            }
+            if (invocation.repoId == null || invocation.repoUrl == null || invocation.queryFormat == null || invocation.packageSpecs.isEmpty()) {
+                return null;
+            }
+            return invocation;
+        }
+    }
+}
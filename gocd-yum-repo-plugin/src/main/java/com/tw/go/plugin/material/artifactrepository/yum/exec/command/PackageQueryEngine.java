@@ -0,0 +1,30 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+public interface PackageQueryEngine {
+    PackageRevisionMessage query(RepoQueryParams params);
+
+    /**
+     * @return whether the engine reads repomd.xml in-process, and so is worth handing the metadata fetched for a poll
+     */
+    default boolean readsRepositoryMetadata() {
+        return true;
+    }
+}
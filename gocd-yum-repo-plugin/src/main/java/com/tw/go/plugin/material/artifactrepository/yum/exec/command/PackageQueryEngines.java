@@ -0,0 +1,44 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.NativeQueryEngine;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.SqliteQueryEngine;
+
+public class PackageQueryEngines {
+    public static final String ENGINE_PROPERTY = "go.yum.query.engine";
+    public static final String NATIVE = "native";
+    public static final String REPOQUERY = "repoquery";
+    public static final String SQLITE = "sqlite";
+
+    public static PackageQueryEngine fromSystemProperties() {
+        return forName(System.getProperty(ENGINE_PROPERTY, NATIVE));
+    }
+
+    static PackageQueryEngine forName(String name) {
+        if (REPOQUERY.equalsIgnoreCase(name)) {
+            return new RepoQueryEngine();
+        }
+        if (NATIVE.equalsIgnoreCase(name)) {
+            return new FallbackQueryEngine(new NativeQueryEngine(), new RepoQueryEngine());
+        }
+        if (SQLITE.equalsIgnoreCase(name)) {
+            return new FallbackQueryEngine(new SqliteQueryEngine(), new FallbackQueryEngine(new NativeQueryEngine(), new RepoQueryEngine()));
+        }
+        throw new IllegalArgumentException(String.format("Unknown query engine '%s'. Supported values are '%s', '%s' and '%s'.", name, NATIVE, SQLITE, REPOQUERY));
+    }
+}
@@ -16,29 +16,117 @@
 
 package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
 
-import org.apache.commons.io.IOUtils;
+import com.thoughtworks.go.plugin.api.logging.Logger;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import static java.lang.String.format;
+
+/**
+ * Runs a command to completion. Stdout and stderr are drained while the command runs, so a command with a lot of
+ * output cannot block on a full pipe, and a command that does not finish within the timeout is killed together with
+ * all of its descendants.
+ */
 public class ProcessRunner {
+    public static final String TIMEOUT_PROPERTY = "go.yum.process.timeout.seconds";
+    public static final long DEFAULT_TIMEOUT_SECONDS = 300;
+    private static final long DRAIN_AFTER_EXIT_MILLIS = 5000;
+    private static final Logger LOGGER = Logger.getLoggerFor(ProcessRunner.class);
+    private static final ExecutorService STREAM_DRAINERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "yum-process-stream-drainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long timeoutMillis;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public ProcessRunner() {
+        this(TimeUnit.SECONDS.toMillis(Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT_SECONDS)));
+    }
+
+    public ProcessRunner(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
     public ProcessOutput execute(String[] command, Map<String, String> envMap) {
+        List<String> stdOut = new ArrayList<>();
+        ProcessOutput processOutput = execute(command, envMap, stdOut::add);
+        return new ProcessOutput(processOutput.getReturnCode(), stdOut, processOutput.getStdErr());
+    }
+
+    /**
+     * Runs the command and hands each line of its stdout to the consumer as soon as it has been read, on a different
+     * thread than the caller's. The consumer has seen every line once this returns; the returned output has no stdout.
+     * The run fails if the output cannot be read to its end, e.g. because a descendant of the command still holds it.
+     */
+    public ProcessOutput execute(String[] command, Map<String, String> envMap, Consumer<String> stdOutConsumer) {
         ProcessBuilder processBuilder = new ProcessBuilder(command);
         Process process = null;
         ProcessOutput processOutput;
+        long start = System.nanoTime();
         try {
-            processBuilder.environment().putAll(envMap);
+            if (envMap != null) {
+                processBuilder.environment().putAll(envMap);
+            }
             process = processBuilder.start();
-            int returnCode = process.waitFor();
-            List<String> outputStream = IOUtils.readLines(process.getInputStream(), Charset.defaultCharset());
-            List<String> errorStream = IOUtils.readLines(process.getErrorStream(), Charset.defaultCharset());
-            processOutput = new ProcessOutput(returnCode, outputStream, errorStream);
+            List<String> errorLines = new ArrayList<>();
+            Drain outputStream = new Drain(process.getInputStream(), stdOutConsumer);
+            Drain errorStream = new Drain(process.getErrorStream(), errorLines::add);
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                killTree(process);
+                timeouts.incrementAndGet();
+                throw new ProcessTimeoutException(format("Command '%s' did not finish within %d ms and was killed", command[0], timeoutMillis));
+            }
+            int returnCode = process.exitValue();
+            try {
+                outputStream.await(command[0]);
+                errorStream.await(command[0]);
+            } catch (IOException e) {
+                // the consumer and the error lines may still be written to, so neither can be handed out
+                outputStream.abandon();
+                errorStream.abandon();
+                failures.incrementAndGet();
+                throw e;
+            }
+            processOutput = new ProcessOutput(returnCode, new ArrayList<>(), errorLines);
+            if (returnCode != 0) {
+                failures.incrementAndGet();
+            }
+        } catch (ProcessTimeoutException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (process != null) {
+                killTree(process);
+            }
+            throw new RuntimeException(format("Interrupted while running '%s'", command[0]));
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException(e.getMessage());
         } finally {
+            record(command, start);
             if (process != null) {
                 closeQuietly(process::getInputStream);
                 closeQuietly(process::getErrorStream);
@@ -49,6 +137,41 @@ public class ProcessRunner {
         return processOutput;
     }
 
+    private void killTree(Process process) {
+        // descendants have to be collected before the parent dies, as they are reparented afterwards
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        descendants.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    private void record(String[] command, long start) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executions.incrementAndGet();
+        totalMillis.addAndGet(elapsed);
+        maxMillis.accumulateAndGet(elapsed, Math::max);
+        LOGGER.debug(format("Ran '%s' in %d ms", command[0], elapsed));
+    }
+
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
     private void closeQuietly(Supplier<AutoCloseable> fn) {
         //noinspection EmptyTryBlock
         try (final AutoCloseable ignored = fn.get()) {
@@ -56,4 +179,51 @@ public class ProcessRunner {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Reads one stream of a process to its end on a separate thread.
+     */
+    private static class Drain {
+        private final CompletableFuture<Void> done;
+        private volatile boolean abandoned;
+
+        Drain(InputStream stream, Consumer<String> consumer) {
+            done = CompletableFuture.runAsync(() -> {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charset.defaultCharset()))) {
+                    String line;
+                    while ((line = reader.readLine()) != null && !abandoned) {
+                        consumer.accept(line);
+                    }
+                } catch (IOException e) {
+                    if (!abandoned) {
+                        throw new RuntimeException(e.getMessage());
+                    }
+                }
+            }, STREAM_DRAINERS);
+        }
+
+        /**
+         * The stream reaches its end once the process exited, unless a descendant that outlived it still holds it. The
+         * output is incomplete then, and the descendant can no longer be found to be killed, as it has been reparented.
+         */
+        void await(String command) throws InterruptedException, IOException {
+            try {
+                done.get(DRAIN_AFTER_EXIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new IOException(format("Output of '%s' was still held open %d ms after it exited", command, DRAIN_AFTER_EXIT_MILLIS));
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        void abandon() {
+            abandoned = true;
+        }
+    }
+
+    public static class ProcessTimeoutException extends RuntimeException {
+        public ProcessTimeoutException(String message) {
+            super(message);
+        }
+    }
 }
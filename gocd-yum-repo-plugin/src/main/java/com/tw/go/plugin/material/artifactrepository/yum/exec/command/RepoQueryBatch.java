@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+
+/**
+ * The specs of one repository that are waiting to be resolved together by a single repoquery process. Identical
+ * specs share one result.
+ */
+class RepoQueryBatch {
+    private static final Logger LOGGER = Logger.getLoggerFor(RepoQueryBatch.class);
+
+    private final RepoQueryParams repository;
+    private final Map<String, CompletableFuture<PackageRevisionMessage>> results = new LinkedHashMap<>();
+    private boolean closed;
+
+    RepoQueryBatch(RepoQueryParams repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @return the future result for the spec, or null if the batch has already been closed.
+     */
+    synchronized CompletableFuture<PackageRevisionMessage> add(String packageSpec) {
+        if (closed) {
+            return null;
+        }
+        return results.computeIfAbsent(packageSpec, spec -> new CompletableFuture<>());
+    }
+
+    void run(ProcessRunner processRunner) {
+        synchronized (this) {
+            closed = true;
+        }
+        if (results.size() == 1) {
+            String spec = results.keySet().iterator().next();
+            complete(results.get(spec), () -> new RepoQueryCommand(processRunner, paramsFor(spec)).execute());
+            return;
+        }
+
+        List<String> specs = new ArrayList<>(results.keySet());
+        List<String> output;
+        try {
+            output = new RepoQueryCommand(processRunner, repository).queryAll(specs);
+        } catch (RuntimeException e) {
+            LOGGER.info(format("Batched repoquery of %d specs failed, querying them one at a time. %s", specs.size(), e.getMessage()));
+            for (Map.Entry<String, CompletableFuture<PackageRevisionMessage>> result : results.entrySet()) {
+                complete(result.getValue(), () -> new RepoQueryCommand(processRunner, paramsFor(result.getKey())).execute());
+            }
+            return;
+        }
+        LOGGER.debug(format("Resolved %d specs of %s with one repoquery", specs.size(), repository.getRepoUrl()));
+        for (Map.Entry<String, CompletableFuture<PackageRevisionMessage>> result : results.entrySet()) {
+            complete(result.getValue(), () -> new RepoQueryCommand(processRunner, paramsFor(result.getKey())).resolveFrom(output));
+        }
+    }
+
+    private RepoQueryParams paramsFor(String packageSpec) {
+        return new RepoQueryParams(repository.getRepoId(), repository.getRepository(), packageSpec, repository.getMetadata());
+    }
+
+    private static void complete(CompletableFuture<PackageRevisionMessage> result, Supplier<PackageRevisionMessage> query) {
+        try {
+            result.complete(query.get());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -17,32 +17,35 @@
 package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
 
 import com.thoughtworks.go.plugin.api.logging.Logger;
-import com.tw.go.plugin.common.util.ListUtil;
-import com.tw.go.plugin.material.artifactrepository.yum.exec.Constants;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheJanitor;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.YumEnvironmentMap;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.PackageSpec;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.PrimaryPackage;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.RpmVersionComparator;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TimeZone;
+import java.util.Map;
+import java.util.function.Consumer;
 
-import static java.lang.Long.parseLong;
 import static java.lang.String.format;
+import static java.util.Arrays.asList;
 
 public class RepoQueryCommand {
     static final String DELIMITER = "<=>";
-    private static final SimpleDateFormat RHEL_8_DATE_FMT = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    static final String QUERY_FORMAT = "%{RELATIVEPATH}" + DELIMITER + "%{NAME}" + DELIMITER + "%{VERSION}" + DELIMITER + "%{RELEASE}" +
+            DELIMITER + "%{ARCH}" + DELIMITER + "%{BUILDTIME}" + DELIMITER + "%{PACKAGER}" + DELIMITER + "%{LOCATION}" +
+            DELIMITER + "%{URL}" + DELIMITER + "%{EPOCH}";
     private final ProcessRunner processRunner;
     private static final Logger LOGGER = Logger.getLoggerFor(RepoQueryCommand.class);
     private final com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams params;
 
-    static {
-        RHEL_8_DATE_FMT.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     public RepoQueryCommand(RepoQueryParams params) {
         this(new ProcessRunner(), params);
     }
@@ -54,87 +57,90 @@ public class RepoQueryCommand {
     }
 
     public PackageRevisionMessage execute() {
-        YumEnvironmentMap yumEnvironmentMap = new YumEnvironmentMap(params.getRepoId());
-        String[] command = {"repoquery",
-                "--repofrompath=" + params.getRepoFromId(),
-                "--repoid=" + params.getRepoId(),
-                "-q",
-                params.getPackageSpec(),
-                "--qf",
-                "%{RELATIVEPATH}" + DELIMITER + "%{NAME}" + DELIMITER + "%{VERSION}" + DELIMITER + "%{RELEASE}" +
-                        DELIMITER + "%{ARCH}" + DELIMITER + "%{BUILDTIME}" + DELIMITER + "%{PACKAGER}" + DELIMITER + "%{LOCATION}" +
-                        DELIMITER + "%{URL}"};
-
-        ProcessOutput processOutput;
-        synchronized (params.getRepoId().intern()) {
-            processOutput = processRunner.execute(command, yumEnvironmentMap.buildYumEnvironmentMap());
-        }
-        if (isSuccessful(processOutput)) {
-            return parseOutput(processOutput);
+        RepoQueryOutputParser parser = new RepoQueryOutputParser(params.getPackageSpec());
+        ProcessOutput processOutput = run(Collections.singletonList(params.getPackageSpec()), false, parser);
+        if (isSuccessful(processOutput) && parser.hasOutput()) {
+            return parser.toRevision();
         }
-        String message = format("Error while querying repository with path '%s' and package spec '%s'. %s", params.getRepoUrl(), params.getPackageSpec(), processOutput.getStdErrorAsString());
-        LOGGER.info(message);
-        throw new RuntimeException(message);
+        throw queryFailed(processOutput.getStdErrorAsString());
     }
 
-    private boolean isSuccessful(ProcessOutput processOutput) {
-        return processOutput != null && processOutput.isZeroReturnCode() && processOutput.hasOutput() && !processOutput.hasErrors();
+    /**
+     * Runs a single repoquery for several specs of the same repository. All matching versions are listed, so that
+     * each spec can later pick its own newest match with {@link #resolveFrom(List)}.
+     *
+     * @return the output lines of every package matched by any of the specs
+     */
+    public List<String> queryAll(List<String> packageSpecs) {
+        List<String> output = new ArrayList<>();
+        ProcessOutput processOutput = run(packageSpecs, true, output::add);
+        if (!isSuccessful(processOutput)) {
+            throw queryFailed(processOutput == null ? "" : processOutput.getStdErrorAsString());
+        }
+        return output;
     }
 
-    private PackageRevisionMessage parseOutput(ProcessOutput processOutput) {
-        if (processOutput.getStdOut().size() > 1) {
-            List<String> results = new ArrayList<>();
-            List<String> stdOut = processOutput.getStdOut();
-            for (String output : stdOut) {
-                String[] parts = output.split(DELIMITER);
-                String fileName = parts[0].substring(parts[0].lastIndexOf('/') + 1);
-                results.add(fileName);
+    /**
+     * Picks the output lines of a multi-spec {@link #queryAll(List)} run that belong to this command's spec, i.e. the
+     * newest match per name.arch, and turns them into a revision exactly like {@link #execute()} would.
+     */
+    public PackageRevisionMessage resolveFrom(List<String> batchOutput) {
+        PackageSpec spec = PackageSpec.compile(params.getPackageSpec());
+        Map<String, PrimaryPackage> newest = new LinkedHashMap<>();
+        Map<PrimaryPackage, String> lines = new HashMap<>();
+        for (String line : batchOutput) {
+            if (RepoQueryOutputParser.fieldCount(line) < 9) {
+                continue;
             }
-            String message = String.format("Given Package Spec (%s) resolves to more than one file on the repository: %s", params.getPackageSpec(), ListUtil.join(results));
-            LOGGER.info(message);
-            throw new MultiplePackageException(message);
-        }
-
-        String output = processOutput.getStdOut().get(0);
-        String[] parts = output.split(DELIMITER);
-        String name = parts[1];
-        String version = parts[2];
-        String release = parts[3];
-        String arch = parts[4];
-        String buildTime = parts[5];
-        String packager = packageTagValue(parts[6]);
-        String location = packageTagValue(parts[7]);
-        String trackbackUrl = packageTagValue(parts[8]);
-        String packageName = format("%s-%s-%s.%s", name, version, release, arch);
-
-        Date timestamp;
-
-        if (buildTime.matches("^\\d+$")) {
-            //converting from epoch time
-            long timeInMillis = parseLong(buildTime) * 1000;
-            timestamp = new Date(timeInMillis);
-        } else if (buildTime.matches("^[\\d]{4}-[\\d]{2}-[\\d]{2} [\\d]{1,2}:[\\d]{2}$")) {
-            // RHEL 8
-            try {
-                timestamp = RHEL_8_DATE_FMT.parse(buildTime);
-            } catch (ParseException e) {
-                throw new IllegalArgumentException(format("Failed to parse buildTime `%s` according to format: %s", buildTime, RHEL_8_DATE_FMT.toPattern()), e);
+            String[] parts = RepoQueryOutputParser.fields(line);
+            String epoch = RepoQueryOutputParser.isDigits(parts[9]) ? parts[9] : "0";
+            PrimaryPackage pkg = new PrimaryPackage(parts[1], parts[4], epoch, parts[2], parts[3], 0, null, null, parts[0], null);
+            if (spec.matches(pkg)) {
+                lines.put(pkg, line);
+                newest.merge(pkg.getName() + "." + pkg.getArch(), pkg, (current, candidate) ->
+                        RpmVersionComparator.compareEvr(candidate.getEpoch(), candidate.getVersion(), candidate.getRelease(), current.getEpoch(), current.getVersion(), current.getRelease()) > 0 ? candidate : current);
             }
-        } else {
-            throw new IllegalArgumentException(format("Don't know how to parse buildTime: %s", buildTime));
         }
+        if (newest.isEmpty()) {
+            throw queryFailed("");
+        }
+        RepoQueryOutputParser parser = new RepoQueryOutputParser(params.getPackageSpec());
+        for (PrimaryPackage pkg : newest.values()) {
+            parser.accept(lines.get(pkg));
+        }
+        return parser.toRevision();
+    }
 
-        PackageRevisionMessage packageRevision = new PackageRevisionMessage(packageName, timestamp, packager, null, trackbackUrl);
-        try {
-            packageRevision.addData(Constants.PACKAGE_LOCATION, location);
-        } catch (RuntimeException e) {
-            LOGGER.warn("Could not add data key. Reason : " + e.getMessage());
+    private ProcessOutput run(List<String> packageSpecs, boolean showDuplicates, Consumer<String> stdOutConsumer) {
+        YumEnvironmentMap yumEnvironmentMap = new YumEnvironmentMap(params.getRepoId());
+        List<String> command = new ArrayList<>(asList("repoquery",
+                "--repofrompath=" + params.getRepoFromId(),
+                "--repoid=" + params.getRepoId(),
+                "-q"));
+        if (showDuplicates) {
+            command.add("--show-duplicates");
+        }
+        command.addAll(packageSpecs);
+        command.add("--qf");
+        command.add(QUERY_FORMAT);
+
+        try (CacheJanitor.Lease cache = CacheJanitor.getInstance().use(new File(yumEnvironmentMap.getTempRepoFilePath()));
+             RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire("repoquery:" + params.getRepoId(), RepositoryLockManager.Mode.WRITE)) {
+            Map<String, String> envMap = yumEnvironmentMap.buildYumEnvironmentMap();
+            if (params.getMetadata() != null) {
+                envMap.put(HelperProcessRunner.REVISION_ENV, params.getMetadata().getVersion());
+            }
+            return processRunner.execute(command.toArray(new String[0]), envMap, stdOutConsumer);
         }
-        return packageRevision;
+    }
 
+    private RuntimeException queryFailed(String reason) {
+        String message = format("Error while querying repository with path '%s' and package spec '%s'. %s", params.getRepoUrl(), params.getPackageSpec(), reason);
+        LOGGER.info(message);
+        return new RuntimeException(message);
     }
 
-    private String packageTagValue(String input) {
-        return "NONE".equalsIgnoreCase(input) ? null : input;
+    private boolean isSuccessful(ProcessOutput processOutput) {
+        return processOutput != null && processOutput.isZeroReturnCode() && !processOutput.hasErrors();
     }
 }
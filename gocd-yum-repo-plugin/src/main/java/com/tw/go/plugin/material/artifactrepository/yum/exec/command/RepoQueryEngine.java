@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves specs with repoquery. Specs of the same repository that arrive within a short window of each other (see
+ * {@link #BATCH_WINDOW_PROPERTY}) are resolved by one repoquery process instead of one each; a window of 0 turns
+ * batching off.
+ */
+public class RepoQueryEngine implements PackageQueryEngine {
+    public static final String BATCH_WINDOW_PROPERTY = "go.yum.repoquery.batch.window.ms";
+    static final long DEFAULT_BATCH_WINDOW_MILLIS = 20;
+
+    private final ProcessRunner processRunner;
+    private final long batchWindowMillis;
+    private final ConcurrentMap<String, RepoQueryBatch> pendingBatches = new ConcurrentHashMap<>();
+
+    public RepoQueryEngine() {
+        this(HelperProcessRunner.isEnabled() ? HelperProcessRunner.getInstance() : new ProcessRunner());
+    }
+
+    public RepoQueryEngine(ProcessRunner processRunner) {
+        this(processRunner, Long.getLong(BATCH_WINDOW_PROPERTY, DEFAULT_BATCH_WINDOW_MILLIS));
+    }
+
+    RepoQueryEngine(ProcessRunner processRunner, long batchWindowMillis) {
+        this.processRunner = processRunner;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    @Override
+    public PackageRevisionMessage query(RepoQueryParams params) {
+        if (batchWindowMillis <= 0) {
+            return new RepoQueryCommand(processRunner, params).execute();
+        }
+        String repository = params.getRepoFromId();
+        while (true) {
+            RepoQueryBatch created = new RepoQueryBatch(params);
+            RepoQueryBatch batch = pendingBatches.putIfAbsent(repository, created);
+            if (batch == null) {
+                batch = created;
+            }
+            CompletableFuture<PackageRevisionMessage> result = batch.add(params.getPackageSpec());
+            if (result == null) {
+                pendingBatches.remove(repository, batch);
+                continue;
+            }
+            if (batch == created) {
+                waitForBatchWindow();
+                pendingBatches.remove(repository, batch);
+                batch.run(processRunner);
+            }
+            return await(result);
+        }
+    }
+
+    /**
+     * repoquery checks repomd.xml itself.
+     */
+    @Override
+    public boolean readsRepositoryMetadata() {
+        return false;
+    }
+
+    private void waitForBatchWindow() {
+        try {
+            Thread.sleep(batchWindowMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PackageRevisionMessage await(CompletableFuture<PackageRevisionMessage> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
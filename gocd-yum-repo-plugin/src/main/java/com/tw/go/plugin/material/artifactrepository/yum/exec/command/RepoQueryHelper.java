@@ -0,0 +1,180 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand.DELIMITER;
+import static java.lang.String.format;
+
+/**
+ * One long-lived repoquery helper process (see repoquery-helper.py). Requests are single lines of tab separated
+ * fields, answers are lines with {@link RepoQueryCommand#DELIMITER} separated fields and end with a DONE line carrying
+ * the status.
+ * A helper is used by one thread at a time.
+ */
+class RepoQueryHelper {
+    static final String DONE = DELIMITER + "DONE" + DELIMITER;
+    private static final String END_OF_STREAM = DELIMITER + "EOF" + DELIMITER;
+    private static final Logger LOGGER = Logger.getLoggerFor(RepoQueryHelper.class);
+
+    private final Process process;
+    private final Writer requests;
+    private final BlockingQueue<String> answers = new LinkedBlockingQueue<>();
+    private final String backend;
+    private volatile long lastUsed;
+
+    private RepoQueryHelper(Process process, long timeoutMillis) throws IOException {
+        this.process = process;
+        this.requests = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+        Thread reader = new Thread(this::readAnswers, "yum-repoquery-helper-" + process.pid());
+        reader.setDaemon(true);
+        reader.start();
+        List<String> pong = request("PING", timeoutMillis);
+        if (pong.size() != 1 || !pong.get(0).startsWith("PONG" + DELIMITER)) {
+            throw new IOException("Unexpected answer to PING: " + pong);
+        }
+        this.backend = pong.get(0).substring(("PONG" + DELIMITER).length());
+        this.lastUsed = System.nanoTime();
+    }
+
+    static RepoQueryHelper start(List<String> command, long timeoutMillis) throws IOException {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        try {
+            return new RepoQueryHelper(process, timeoutMillis);
+        } catch (IOException | RuntimeException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    private void readAnswers() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                answers.add(line);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Lost repoquery helper output: " + e.getMessage());
+        } finally {
+            answers.add(END_OF_STREAM);
+        }
+    }
+
+    String getBackend() {
+        return backend;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    long idleNanos() {
+        return System.nanoTime() - lastUsed;
+    }
+
+    boolean ping(long timeoutMillis) {
+        try {
+            request("PING", timeoutMillis);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the output of a repoquery with the given arguments, as if repoquery itself had been run
+     */
+    ProcessOutput query(String repoId, String repoUrl, String cacheDir, String revision, boolean showDuplicates, String queryFormat, List<String> packageSpecs, long timeoutMillis) throws IOException {
+        List<String> fields = new ArrayList<>(Arrays.asList("QUERY", repoId, repoUrl, cacheDir, showDuplicates ? "1" : "0", queryFormat, revision));
+        fields.addAll(packageSpecs);
+        for (String field : fields) {
+            if (field.indexOf('\t') >= 0) {
+                throw new IllegalArgumentException("Request field must not contain a tab: " + field);
+            }
+        }
+        try {
+            return new ProcessOutput(0, request(String.join("\t", fields), timeoutMillis), new ArrayList<>());
+        } catch (HelperRequestFailed e) {
+            return new ProcessOutput(1, new ArrayList<>(), Collections.singletonList(e.getMessage()));
+        }
+    }
+
+    private List<String> request(String request, long timeoutMillis) throws IOException {
+        if (request.indexOf('\n') >= 0 || request.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("Request must be a single line");
+        }
+        lastUsed = System.nanoTime();
+        requests.write(request);
+        requests.write('\n');
+        requests.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            String line;
+            try {
+                line = answers.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                destroy();
+                throw new IOException("Interrupted while waiting for repoquery helper");
+            }
+            if (line == null) {
+                destroy();
+                throw new IOException(format("Repoquery helper did not answer within %d ms", timeoutMillis));
+            }
+            if (line.equals(END_OF_STREAM)) {
+                throw new IOException(format("Repoquery helper exited (exit code %s)", process.isAlive() ? "unknown" : process.exitValue()));
+            }
+            if (line.startsWith(DONE)) {
+                lastUsed = System.nanoTime();
+                String status = line.substring(DONE.length());
+                if (status.equals("0")) {
+                    return lines;
+                }
+                int separator = status.indexOf(DELIMITER);
+                throw new HelperRequestFailed(separator < 0 ? "" : status.substring(separator + DELIMITER.length()));
+            }
+            lines.add(line);
+        }
+    }
+
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    private static class HelperRequestFailed extends RuntimeException {
+        HelperRequestFailed(String message) {
+            super(message);
+        }
+    }
+}
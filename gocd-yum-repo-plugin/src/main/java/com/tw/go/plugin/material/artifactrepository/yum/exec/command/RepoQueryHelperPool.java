@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.String.format;
+
+/**
+ * A bounded pool of {@link RepoQueryHelper} processes. Idle helpers are pinged before reuse once they have been idle
+ * for a while, and helpers that crashed or timed out are replaced by fresh ones. The first of the candidate commands
+ * that starts a working helper is used from then on.
+ */
+class RepoQueryHelperPool {
+    static final long HEALTH_CHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long START_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final Logger LOGGER = Logger.getLoggerFor(RepoQueryHelperPool.class);
+
+    private final List<List<String>> candidateCommands;
+    private final Semaphore permits;
+    private final BlockingQueue<RepoQueryHelper> idle = new LinkedBlockingQueue<>();
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger replaced = new AtomicInteger();
+    private volatile List<String> command;
+
+    RepoQueryHelperPool(List<List<String>> candidateCommands, int size) {
+        this.candidateCommands = candidateCommands;
+        this.permits = new Semaphore(size, true);
+    }
+
+    interface HelperCall<T> {
+        T call(RepoQueryHelper helper) throws IOException;
+    }
+
+    <T> T withHelper(long timeoutMillis, HelperCall<T> call) throws IOException {
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException(format("No repoquery helper became free within %d ms", timeoutMillis));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a repoquery helper");
+        }
+        try {
+            RepoQueryHelper helper = healthy(idle.poll());
+            boolean reusable = false;
+            try {
+                T result = call.call(helper);
+                reusable = helper.isAlive();
+                return result;
+            } catch (IllegalArgumentException e) {
+                // rejected before anything was sent to the helper
+                reusable = helper.isAlive();
+                throw e;
+            } finally {
+                if (reusable) {
+                    idle.add(helper);
+                } else {
+                    helper.destroy();
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private RepoQueryHelper healthy(RepoQueryHelper helper) throws IOException {
+        if (helper != null) {
+            if (helper.isAlive() && (helper.idleNanos() < TimeUnit.MILLISECONDS.toNanos(HEALTH_CHECK_INTERVAL_MILLIS) || helper.ping(START_TIMEOUT_MILLIS))) {
+                return helper;
+            }
+            helper.destroy();
+            replaced.incrementAndGet();
+            LOGGER.info("Replacing unresponsive repoquery helper");
+        }
+        return start();
+    }
+
+    private RepoQueryHelper start() throws IOException {
+        List<String> known = command;
+        if (known != null) {
+            return started(RepoQueryHelper.start(known, START_TIMEOUT_MILLIS));
+        }
+        IOException failure = new IOException("No repoquery helper command configured");
+        for (List<String> candidate : candidateCommands) {
+            try {
+                RepoQueryHelper helper = RepoQueryHelper.start(candidate, START_TIMEOUT_MILLIS);
+                LOGGER.info(format("Started repoquery helper with %s using %s", candidate.get(0), helper.getBackend()));
+                command = candidate;
+                return started(helper);
+            } catch (IOException e) {
+                failure = new IOException(format("Could not start repoquery helper with %s: %s", candidate.get(0), e.getMessage()), e);
+            }
+        }
+        throw failure;
+    }
+
+    private RepoQueryHelper started(RepoQueryHelper helper) {
+        started.incrementAndGet();
+        return helper;
+    }
+
+    int getStarted() {
+        return started.get();
+    }
+
+    int getReplaced() {
+        return replaced.get();
+    }
+
+    void shutdown() {
+        List<RepoQueryHelper> helpers = new ArrayList<>();
+        idle.drainTo(helpers);
+        for (RepoQueryHelper helper : helpers) {
+            helper.destroy();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.common.util.ListUtil;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.Constants;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand.DELIMITER;
+import static java.lang.String.format;
+
+/**
+ * Consumes the output of a single spec repoquery line by line. Only the first line is kept and parsed: a second line
+ * already decides that the spec is ambiguous. The file names of the first {@link #MAX_LISTED_FILES} lines are
+ * remembered for the error message; later lines are only counted, without looking at their content.
+ * <p>
+ * Reading does not stop once the spec is known to be ambiguous: repoquery has resolved every match before it prints
+ * the first one, and its output has to be drained anyway for it to exit, so stopping early would save nothing but the
+ * exact count reported in the error message.
+ */
+class RepoQueryOutputParser implements Consumer<String> {
+    static final int MAX_LISTED_FILES = 10;
+    static final int FIELD_COUNT = 10;
+    private static final DateTimeFormatter RHEL_8_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd H:mm");
+    private static final Logger LOGGER = Logger.getLoggerFor(RepoQueryOutputParser.class);
+
+    private final String packageSpec;
+    private final List<String> fileNames = new ArrayList<>();
+    private String firstLine;
+    private int lines;
+
+    RepoQueryOutputParser(String packageSpec) {
+        this.packageSpec = packageSpec;
+    }
+
+    @Override
+    public void accept(String line) {
+        if (++lines > MAX_LISTED_FILES) {
+            return;
+        }
+        if (lines == 1) {
+            firstLine = line;
+        }
+        fileNames.add(fileName(line));
+    }
+
+    boolean hasOutput() {
+        return lines > 0;
+    }
+
+    int getLineCount() {
+        return lines;
+    }
+
+    PackageRevisionMessage toRevision() {
+        if (lines > 1) {
+            String files = ListUtil.join(fileNames);
+            if (lines > fileNames.size()) {
+                files += format(" and %d more", lines - fileNames.size());
+            }
+            String message = format("Given Package Spec (%s) resolves to more than one file on the repository: %s", packageSpec, files);
+            LOGGER.info(message);
+            throw new MultiplePackageException(message);
+        }
+
+        String[] parts = fields(firstLine);
+        String name = parts[1];
+        String version = parts[2];
+        String release = parts[3];
+        String arch = parts[4];
+        String packager = packageTagValue(parts[6]);
+        String location = packageTagValue(parts[7]);
+        String trackbackUrl = packageTagValue(parts[8]);
+        String epoch = isDigits(parts[9]) ? parts[9] : null;
+        String packageName = name + "-" + version + "-" + release + "." + arch;
+
+        PackageRevisionMessage packageRevision = new PackageRevisionMessage(packageName, parseBuildTime(parts[5]), packager, null, trackbackUrl);
+        try {
+            packageRevision.addData(Constants.PACKAGE_LOCATION, location);
+            if (epoch != null) {
+                packageRevision.addData(Constants.PACKAGE_EPOCH, epoch);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Could not add data key. Reason : " + e.getMessage());
+        }
+        return packageRevision;
+    }
+
+    /**
+     * Splits a line of {@link RepoQueryCommand#QUERY_FORMAT} output into exactly {@link #FIELD_COUNT} fields. Missing
+     * trailing fields are empty, and anything after the last field is left in it.
+     */
+    static String[] fields(String line) {
+        String[] fields = new String[FIELD_COUNT];
+        int start = 0;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (start > line.length()) {
+                fields[i] = "";
+                continue;
+            }
+            int end = i == FIELD_COUNT - 1 ? -1 : line.indexOf(DELIMITER, start);
+            if (end < 0) {
+                fields[i] = line.substring(start);
+                start = line.length() + 1;
+            } else {
+                fields[i] = line.substring(start, end);
+                start = end + DELIMITER.length();
+            }
+        }
+        return fields;
+    }
+
+    static int fieldCount(String line) {
+        int count = 1;
+        for (int index = line.indexOf(DELIMITER); index >= 0 && count < FIELD_COUNT; index = line.indexOf(DELIMITER, index + DELIMITER.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    static boolean isDigits(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fileName(String line) {
+        int end = line.indexOf(DELIMITER);
+        if (end < 0) {
+            end = line.length();
+        }
+        return line.substring(line.lastIndexOf('/', end - 1) + 1, end);
+    }
+
+    static Date parseBuildTime(String buildTime) {
+        if (isDigits(buildTime)) {
+            //converting from epoch time
+            return new Date(Long.parseLong(buildTime) * 1000);
+        }
+        try {
+            // RHEL 8
+            return Date.from(LocalDateTime.parse(buildTime, RHEL_8_DATE_FORMAT).toInstant(ZoneOffset.UTC));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(format("Don't know how to parse buildTime: %s", buildTime), e);
+        }
+    }
+
+    private static String packageTagValue(String input) {
+        return "NONE".equalsIgnoreCase(input) ? null : input;
+    }
+}
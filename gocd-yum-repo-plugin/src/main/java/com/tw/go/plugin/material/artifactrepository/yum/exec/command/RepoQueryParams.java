@@ -18,16 +18,27 @@ package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
 
 
 import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.repodata.MetadataGeneration;
 
 public class RepoQueryParams {
     private final String repoId;
     private final String packageSpec;
     private final RepoUrl repoUrl;
+    private final MetadataGeneration metadata;
 
     public RepoQueryParams(String repoId, RepoUrl repoUrl, String packageSpec) {
+        this(repoId, repoUrl, packageSpec, null);
+    }
+
+    /**
+     * @param metadata the repository metadata the caller has just fetched, so that engines that read it do not fetch
+     *                 repomd.xml again; null if unknown
+     */
+    public RepoQueryParams(String repoId, RepoUrl repoUrl, String packageSpec, MetadataGeneration metadata) {
         this.repoId = repoId;
         this.packageSpec = packageSpec;
         this.repoUrl = repoUrl;
+        this.metadata = metadata;
     }
 
     public String getRepoId() {
@@ -45,4 +56,12 @@ public class RepoQueryParams {
     public String getRepoUrl() {
         return repoUrl.forDisplay();
     }
+
+    public RepoUrl getRepository() {
+        return repoUrl;
+    }
+
+    public MetadataGeneration getMetadata() {
+        return metadata;
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.io.IOException;
+
+/**
+ * Metadata whose size or checksum differs from what repomd.xml advertises, like a truncated or corrupted download.
+ */
+class CorruptMetadataException extends IOException {
+    CorruptMetadataException(String message) {
+        super(message);
+    }
+
+    static boolean isCauseOf(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CorruptMetadataException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.util.Arrays;
+
+/**
+ * A shell glob ({@code *}, {@code ?}, {@code [seq]}, {@code [!seq]}) compiled into a non-deterministic automaton with
+ * one state per glob token. Matching advances the set of live states, kept as a bit set, one character at a time, so
+ * it runs in time linear in the input without the backtracking of an equivalent regular expression and without
+ * allocating per character.
+ */
+class GlobMatcher {
+    private static final byte LITERAL = 0;
+    private static final byte ANY = 1;
+    private static final byte STAR = 2;
+    private static final byte CLASS = 3;
+
+    private final byte[] types;
+    private final char[] literals;
+    private final char[][] ranges;
+    private final boolean[] negated;
+    private final int stateWords;
+
+    private GlobMatcher(byte[] types, char[] literals, char[][] ranges, boolean[] negated) {
+        this.types = types;
+        this.literals = literals;
+        this.ranges = ranges;
+        this.negated = negated;
+        this.stateWords = (types.length >> 6) + 1;
+    }
+
+    static GlobMatcher compile(String glob) {
+        int length = glob.length();
+        byte[] types = new byte[length];
+        char[] literals = new char[length];
+        char[][] ranges = new char[length][];
+        boolean[] negated = new boolean[length];
+        int tokens = 0;
+        int i = 0;
+        while (i < length) {
+            char c = glob.charAt(i++);
+            if (c == '*') {
+                if (tokens == 0 || types[tokens - 1] != STAR) {
+                    types[tokens++] = STAR;
+                }
+            } else if (c == '?') {
+                types[tokens++] = ANY;
+            } else if (c == '[' && closingBracket(glob, i) >= 0) {
+                int end = closingBracket(glob, i);
+                boolean not = glob.charAt(i) == '!';
+                ranges[tokens] = parseClass(glob.substring(not ? i + 1 : i, end));
+                negated[tokens] = not;
+                types[tokens++] = CLASS;
+                i = end + 1;
+            } else {
+                literals[tokens] = c;
+                types[tokens++] = LITERAL;
+            }
+        }
+        char[][] trimmedRanges = new char[tokens][];
+        System.arraycopy(ranges, 0, trimmedRanges, 0, tokens);
+        return new GlobMatcher(Arrays.copyOf(types, tokens), Arrays.copyOf(literals, tokens), trimmedRanges, Arrays.copyOf(negated, tokens));
+    }
+
+    private static int closingBracket(String glob, int start) {
+        int j = start;
+        if (j < glob.length() && glob.charAt(j) == '!') {
+            j++;
+        }
+        if (j < glob.length() && glob.charAt(j) == ']') {
+            j++;
+        }
+        while (j < glob.length() && glob.charAt(j) != ']') {
+            j++;
+        }
+        return j < glob.length() ? j : -1;
+    }
+
+    private static char[] parseClass(String body) {
+        StringBuilder pairs = new StringBuilder();
+        int i = 0;
+        while (i < body.length()) {
+            char from = body.charAt(i);
+            if (i + 2 < body.length() && body.charAt(i + 1) == '-') {
+                pairs.append(from).append(body.charAt(i + 2));
+                i += 3;
+            } else {
+                pairs.append(from).append(from);
+                i++;
+            }
+        }
+        return pairs.toString().toCharArray();
+    }
+
+    boolean matches(CharSequence input) {
+        int last = types.length;
+        long[] current = new long[stateWords];
+        long[] next = new long[stateWords];
+        set(current, 0);
+        followStars(current);
+        for (int position = 0; position < input.length(); position++) {
+            char c = input.charAt(position);
+            Arrays.fill(next, 0L);
+            boolean alive = false;
+            for (int word = 0; word < stateWords; word++) {
+                long bits = current[word];
+                while (bits != 0) {
+                    int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if (state == last) {
+                        continue;
+                    }
+                    if (types[state] == STAR) {
+                        set(next, state);
+                        alive = true;
+                    } else if (accepts(state, c)) {
+                        set(next, state + 1);
+                        alive = true;
+                    }
+                }
+            }
+            if (!alive) {
+                return false;
+            }
+            followStars(next);
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+        return isSet(current, last);
+    }
+
+    private void followStars(long[] states) {
+        for (int state = 0; state < types.length; state++) {
+            if (types[state] == STAR && isSet(states, state)) {
+                set(states, state + 1);
+            }
+        }
+    }
+
+    private boolean accepts(int state, char c) {
+        switch (types[state]) {
+            case LITERAL:
+                return literals[state] == c;
+            case ANY:
+                return true;
+            case CLASS:
+                char[] pairs = ranges[state];
+                boolean inClass = false;
+                for (int i = 0; i < pairs.length && !inClass; i += 2) {
+                    inClass = pairs[i] <= c && c <= pairs[i + 1];
+                }
+                return inClass != negated[state];
+            default:
+                return false;
+        }
+    }
+
+    private static void set(long[] states, int state) {
+        states[state >> 6] |= 1L << (state & 63);
+    }
+
+    private static boolean isSet(long[] states, int state) {
+        return (states[state >> 6] & (1L << (state & 63))) != 0;
+    }
+}
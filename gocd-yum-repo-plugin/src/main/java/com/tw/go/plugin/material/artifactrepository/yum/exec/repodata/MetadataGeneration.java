@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheValidators;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * One revision of a repository's metadata as seen through repomd.xml. Anything derived from it, like the package
+ * index, is built at most once per generation and shared by every caller.
+ */
+public class MetadataGeneration {
+    private final RepoMetadata metadata;
+    private final ConcurrentMap<String, CompletableFuture<Object>> derived = new ConcurrentHashMap<>();
+    private volatile CacheValidators validators;
+    private volatile long checkedAt;
+    private volatile boolean rejected;
+
+    MetadataGeneration(RepoMetadata metadata, CacheValidators validators) {
+        this.metadata = metadata;
+        this.validators = validators;
+        this.checkedAt = System.nanoTime();
+    }
+
+    public RepoMetadata getMetadata() {
+        return metadata;
+    }
+
+    public String getVersion() {
+        return metadata.getVersion();
+    }
+
+    public CacheValidators getValidators() {
+        return validators;
+    }
+
+    long getCheckedAt() {
+        return checkedAt;
+    }
+
+    void confirm(CacheValidators validators) {
+        this.validators = validators;
+        this.checkedAt = System.nanoTime();
+    }
+
+    /**
+     * @return true once the metadata files of this generation turned out not to match repomd.xml
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    void reject() {
+        this.rejected = true;
+    }
+
+    /**
+     * Builds the value for the key on the calling thread, outside of the map, as building can take minutes for a large
+     * repository. Callers asking for the key meanwhile wait for that build. A failed build is forgotten, so the next
+     * caller builds again.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T derive(String key, Function<MetadataGeneration, T> builder) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = derived.putIfAbsent(key, mine);
+        if (existing != null) {
+            return (T) await(existing);
+        }
+        try {
+            T value = builder.apply(this);
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            derived.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> building) {
+        try {
+            return building.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
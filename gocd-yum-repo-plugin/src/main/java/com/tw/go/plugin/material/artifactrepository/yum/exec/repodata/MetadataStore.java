@@ -0,0 +1,214 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.FileLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.YumEnvironmentMap;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Content-addressed store of downloaded metadata under go.yum.tmpdir. Each file is kept once in objects/, named by
+ * the checksum repomd.xml lists for it, and every repository that uses it gets a hard link in its own directory under
+ * repos/. A mirror reached through several URLs is downloaded and stored only once. Files are written to a temporary
+ * name and renamed into place, so a reader never sees a partial file.
+ * <p>
+ * A file in objects/ with no other link is no longer used by any repository and is removed by
+ * {@link #removeUnreferenced()}. Where hard links are not supported, repositories get copies instead.
+ */
+public class MetadataStore {
+    public static final String DIRECTORY_ID = "metadata";
+    public static final String REPOSITORIES = "repos";
+    static final String TEMP_SUFFIX = ".tmp";
+    static final String LOCK_SUFFIX = ".lock";
+    private static final Logger LOGGER = Logger.getLoggerFor(MetadataStore.class);
+    private static final MetadataStore INSTANCE = new MetadataStore(null);
+
+    private final File root;
+    private final AtomicLong filesWritten = new AtomicLong();
+    private final AtomicLong filesShared = new AtomicLong();
+
+    interface Writer {
+        void write(File temp) throws IOException;
+    }
+
+    public MetadataStore(File root) {
+        this.root = root;
+    }
+
+    public static MetadataStore getInstance() {
+        return INSTANCE;
+    }
+
+    File getRoot() {
+        // resolved on every use, as go.yum.tmpdir may be set after the plugin is loaded
+        return root != null ? root : new File(new YumEnvironmentMap(DIRECTORY_ID).getTempRepoFilePath());
+    }
+
+    File directoryOf(RepoUrl repository) {
+        File directory = new File(new File(getRoot(), REPOSITORIES), DigestUtils.md5Hex(repository.sharingKey()));
+        directory.mkdirs();
+        return directory;
+    }
+
+    File objectFor(String checksum, String suffix) {
+        String name = checksum.toLowerCase(Locale.ROOT);
+        return new File(new File(new File(getRoot(), "objects"), name.substring(0, 2)), name + suffix);
+    }
+
+    /**
+     * Puts the file with the given checksum at the target, linking the stored copy if there is one and otherwise
+     * writing it with the writer. Without a usable checksum the file is written to the target only.
+     *
+     * @return true if the file was written, false if an existing copy was linked
+     */
+    boolean link(File target, String checksum, String suffix, Writer writer) throws IOException {
+        if (checksum == null || !checksum.matches("[0-9a-fA-F]{2,}")) {
+            File temp = File.createTempFile(target.getName(), TEMP_SUFFIX, target.getParentFile());
+            try {
+                writer.write(temp);
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+            filesWritten.incrementAndGet();
+            return true;
+        }
+        File object = objectFor(checksum, suffix);
+        if (linkOrCopy(object, target)) {
+            filesShared.incrementAndGet();
+            return false;
+        }
+        // a process that is writing the same file is waited for and its copy linked
+        try (FileLockManager.Lease ignored = FileLockManager.getInstance().acquire(new File(object.getPath() + LOCK_SUFFIX), RepositoryLockManager.Mode.WRITE)) {
+            if (linkOrCopy(object, target)) {
+                filesShared.incrementAndGet();
+                return false;
+            }
+            write(object, target, writer);
+        }
+        filesWritten.incrementAndGet();
+        return true;
+    }
+
+    private static void write(File object, File target, Writer writer) throws IOException {
+        object.getParentFile().mkdirs();
+        File temp = File.createTempFile("object-", TEMP_SUFFIX, object.getParentFile());
+        try {
+            writer.write(temp);
+            // linked before it is renamed into objects/, so it is never seen there without a repository using it
+            if (!linkOrCopy(temp, target)) {
+                throw new IOException(format("Could not link %s to %s", temp, target));
+            }
+            Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * @return false if the source does not exist
+     */
+    private static boolean linkOrCopy(File source, File target) throws IOException {
+        File link = new File(target.getParentFile(), format("%s-%d%s", target.getName(), System.nanoTime(), TEMP_SUFFIX));
+        try {
+            try {
+                Files.createLink(link.toPath(), source.toPath());
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                try {
+                    Files.copy(source.toPath(), link.toPath());
+                } catch (NoSuchFileException missing) {
+                    return false;
+                }
+            }
+            Files.move(link.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } finally {
+            Files.deleteIfExists(link.toPath());
+        }
+    }
+
+    /**
+     * Deletes the stored files that no repository links to any more. Does nothing where the file system does not
+     * count links.
+     */
+    public void removeUnreferenced() {
+        File[] prefixes = new File(getRoot(), "objects").listFiles(File::isDirectory);
+        for (File prefix : prefixes == null ? new File[0] : prefixes) {
+            File[] objects = prefix.listFiles((dir, name) -> !name.endsWith(TEMP_SUFFIX) && !name.endsWith(LOCK_SUFFIX));
+            for (File object : objects == null ? new File[0] : objects) {
+                Integer links = linkCount(object);
+                if (links != null && links <= 1 && !object.delete() && object.exists()) {
+                    LOGGER.warn(format("Could not delete unused metadata %s", object));
+                }
+            }
+            File[] locks = prefix.listFiles((dir, name) -> name.endsWith(LOCK_SUFFIX));
+            for (File lock : locks == null ? new File[0] : locks) {
+                removeUnusedLock(lock);
+            }
+        }
+    }
+
+    private static void removeUnusedLock(File lock) {
+        File object = new File(lock.getPath().substring(0, lock.getPath().length() - LOCK_SUFFIX.length()));
+        if (object.exists()) {
+            return;
+        }
+        try (FileLockManager.Lease lease = FileLockManager.getInstance().tryAcquire(lock, RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS)) {
+            if (lease != null && !object.exists()) {
+                Files.deleteIfExists(lock.toPath());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.warn(format("Could not delete unused lock file %s: %s", lock, e.getMessage()));
+        }
+    }
+
+    private static Integer linkCount(File file) {
+        try {
+            return (Integer) Files.getAttribute(file.toPath(), "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return null;
+        }
+    }
+
+    long getFilesWritten() {
+        return filesWritten.get();
+    }
+
+    long getFilesShared() {
+        return filesShared.get();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import static java.lang.String.format;
+
+class MetadataStreams {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Map<String, MetadataDecompressor> DECOMPRESSORS = new ConcurrentHashMap<>();
+
+    static {
+        register(".gz", stream -> new GZIPInputStream(stream, BUFFER_SIZE));
+        register(".bz2", stream -> new BZip2CompressorInputStream(new BufferedInputStream(stream, BUFFER_SIZE)));
+        register(".xz", stream -> new XZCompressorInputStream(new BufferedInputStream(stream, BUFFER_SIZE)));
+        register(".zst", stream -> new ZstdCompressorInputStream(new BufferedInputStream(stream, BUFFER_SIZE)));
+        register(".zck", stream -> new ZchunkInputStream(new BufferedInputStream(stream, BUFFER_SIZE)));
+        register(".xml", stream -> stream);
+        register(".sqlite", stream -> stream);
+    }
+
+    static InputStream decompress(RepoDataEntry entry, InputStream stream) throws IOException {
+        String location = entry.getLocation();
+        MetadataDecompressor decompressor = decompressorFor(location);
+        if (decompressor == null) {
+            throw new UnsupportedMetadataException(format("Unsupported compression for %s metadata '%s'.", entry.getType(), location));
+        }
+        try {
+            return decompressor.decompress(stream);
+        } catch (LinkageError e) {
+            // xz and zstd need libraries, zstd even a native one, which may be missing on this platform
+            throw new UnsupportedMetadataException(format("Cannot decompress %s metadata '%s': %s", entry.getType(), location, e));
+        }
+    }
+
+    /**
+     * Decompresses on a background thread, verifying size and checksum of the compressed as well as the decompressed
+     * bytes against repomd.xml in the same pass. A mismatch surfaces as {@link CorruptMetadataException} once the
+     * stream has been read to its end. The whole decompressor chain, including the given stream, is closed on the
+     * background thread once the returned stream is closed or read to its end.
+     */
+    static InputStream pipeline(RepoDataEntry entry, InputStream stream) throws IOException {
+        return new PipelinedInputStream(verified(entry, stream));
+    }
+
+    static InputStream verified(RepoDataEntry entry, InputStream stream) throws IOException {
+        VerifyingInputStream compressed = new VerifyingInputStream(stream, entry.getLocation(), entry.getChecksumType(), entry.getChecksum(), entry.getSize(), null);
+        InputStream decompressed = decompress(entry, compressed);
+        if (decompressed == compressed) {
+            return compressed;
+        }
+        return new VerifyingInputStream(decompressed, "Uncompressed " + entry.getLocation(), entry.getOpenChecksumType(), entry.getOpenChecksum(), entry.getOpenSize(), compressed);
+    }
+
+    /**
+     * Makes metadata files whose location ends with the extension readable, replacing any decompressor registered for
+     * it before.
+     */
+    static void register(String extension, MetadataDecompressor decompressor) {
+        DECOMPRESSORS.put(extension, decompressor);
+    }
+
+    private static MetadataDecompressor decompressorFor(String location) {
+        String name = location.toLowerCase(Locale.ROOT);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? null : DECOMPRESSORS.get(name.substring(dot));
+    }
+}
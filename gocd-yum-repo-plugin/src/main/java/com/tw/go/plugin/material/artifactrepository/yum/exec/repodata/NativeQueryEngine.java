@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheJanitor;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.PackageQueryEngine;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.lang.String.format;
+
+public class NativeQueryEngine implements PackageQueryEngine {
+    static final String REPOMD_PATH = "repodata/repomd.xml";
+    static final String PRIMARY_ZCK = "primary_zck";
+    private static final String PACKAGE_INDEX = "package-index";
+    private static final Logger LOGGER = Logger.getLoggerFor(NativeQueryEngine.class);
+    private final RepositoryRegistry registry;
+    private final ZchunkDownloader zchunkDownloader = new ZchunkDownloader();
+
+    public NativeQueryEngine() {
+        this(RepositoryRegistry.getInstance());
+    }
+
+    public NativeQueryEngine(RepositoryRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public PackageRevisionMessage query(RepoQueryParams params) {
+        RepoUrl repository = params.getRepository();
+        PackageSpec spec = PackageSpec.compile(params.getPackageSpec());
+        PackageIndex index;
+        try {
+            index = indexOrLastGood(repository, registry.generationFor(params));
+        } catch (UnsupportedMetadataException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw QueryResults.queryFailed(params, e.getMessage());
+        }
+        return QueryResults.singleRevision(params, index.newestMatches(spec));
+    }
+
+    PackageIndex indexFor(RepoUrl repository) {
+        return indexFor(repository, registry.currentGeneration(repository));
+    }
+
+    private PackageIndex indexOrLastGood(RepoUrl repository, MetadataGeneration generation) {
+        try {
+            return indexFor(repository, generation);
+        } catch (RuntimeException e) {
+            MetadataGeneration lastGood = CorruptMetadataException.isCauseOf(e) ? registry.reject(repository, generation) : null;
+            if (lastGood == null) {
+                throw e;
+            }
+            LOGGER.warn(format("Answering from metadata revision %s of %s: %s", lastGood.getMetadata().getRevision(), repository.forDisplay(), e.getMessage()));
+            return indexFor(repository, lastGood);
+        }
+    }
+
+    private PackageIndex indexFor(RepoUrl repository, MetadataGeneration generation) {
+        return generation.derive(PACKAGE_INDEX, g -> buildIndex(repository, g.getMetadata()));
+    }
+
+    private PackageIndex buildIndex(RepoUrl repository, RepoMetadata metadata) {
+        RepoDataEntry primary = metadata.getPrimary();
+        if (primary == null || primary.getLocation() == null) {
+            throw new UnsupportedMetadataException(format("No primary metadata listed in %s.", repository.getRepoMetadataUrl()));
+        }
+        long start = System.currentTimeMillis();
+        PackageIndex.Builder builder = readZchunk(repository, metadata.get(PRIMARY_ZCK));
+        if (builder == null) {
+            PackageIndex.Builder fromPrimary = new PackageIndex.Builder();
+            repository.fetch(primary.getLocation(), stream -> {
+                try (InputStream xml = MetadataStreams.pipeline(primary, stream)) {
+                    PrimaryMetadataParser.parse(xml, fromPrimary::add);
+                    // checksums are verified at the end of the stream
+                    IOUtils.consume(xml);
+                }
+                return null;
+            });
+            builder = fromPrimary;
+        }
+        PackageIndex index = builder.build(metadata.getVersion());
+        LOGGER.debug(format("Indexed %d packages of %s (revision %s) in %d ms", index.size(), repository.forDisplay(), metadata.getRevision(), System.currentTimeMillis() - start));
+        return index;
+    }
+
+    /**
+     * @return the packages of the zchunk primary metadata, or null if the repository has none or it cannot be read
+     */
+    private PackageIndex.Builder readZchunk(RepoUrl repository, RepoDataEntry primaryZck) {
+        if (primaryZck == null || primaryZck.getLocation() == null || repository.isLocal() || !ZchunkDownloader.isEnabled()) {
+            return null;
+        }
+        try (CacheJanitor.Lease ignored = CacheJanitor.getInstance().use(MetadataStore.getInstance().directoryOf(repository))) {
+            File file = zchunkDownloader.download(repository, primaryZck);
+            PackageIndex.Builder builder = new PackageIndex.Builder();
+            try (InputStream xml = MetadataStreams.pipeline(primaryZck, new FileInputStream(file))) {
+                PrimaryMetadataParser.parse(xml, builder::add);
+                IOUtils.consume(xml);
+            }
+            return builder;
+        } catch (RuntimeException | IOException e) {
+            LOGGER.warn(format("Reading the full primary metadata of %s instead of %s: %s", repository.forDisplay(), primaryZck.getLocation(), e.getMessage()));
+            return null;
+        }
+    }
+}
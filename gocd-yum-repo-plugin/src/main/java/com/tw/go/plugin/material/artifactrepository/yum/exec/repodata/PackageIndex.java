@@ -0,0 +1,146 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the primary metadata of one repository: package name to arch to every EVR of that
+ * name.arch, newest (by rpm epoch:version-release ordering) first. Package names are also kept sorted, so that a glob
+ * only has to look at the names that start with its literal prefix, and complete name-ver-rel.arch labels are hashed
+ * for direct lookup. Instances are safe to share between threads without locking.
+ */
+public class PackageIndex {
+    static final Comparator<PrimaryPackage> NEWEST_FIRST = (a, b) -> {
+        int byEvr = RpmVersionComparator.compareEvr(b.getEpoch(), b.getVersion(), b.getRelease(), a.getEpoch(), a.getVersion(), a.getRelease());
+        return byEvr != 0 ? byEvr : Long.compare(b.getBuildTime(), a.getBuildTime());
+    };
+
+    private final String version;
+    private final Map<String, Map<String, List<PrimaryPackage>>> packages;
+    private final String[] sortedNames;
+    private final Map<String, List<PrimaryPackage>> byLabel;
+    private final int size;
+
+    private PackageIndex(String version, Map<String, Map<String, List<PrimaryPackage>>> packages, Map<String, List<PrimaryPackage>> byLabel, int size) {
+        this.version = version;
+        this.packages = packages;
+        this.byLabel = byLabel;
+        this.size = size;
+        this.sortedNames = packages.keySet().toArray(new String[0]);
+        Arrays.sort(this.sortedNames);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Map<String, List<PrimaryPackage>> byArch(String name) {
+        Map<String, List<PrimaryPackage>> archs = packages.get(name);
+        return archs == null ? Collections.emptyMap() : archs;
+    }
+
+    /**
+     * @return for every name.arch that has at least one package matching the spec, the newest matching package.
+     */
+    public List<PrimaryPackage> newestMatches(PackageSpec spec) {
+        String label = spec.getLabel();
+        if (label != null) {
+            List<PrimaryPackage> labelled = byLabel.get(label);
+            if (labelled != null && labelled.size() == 1 && spec.matches(labelled.get(0))) {
+                return Collections.singletonList(labelled.get(0));
+            }
+        }
+        List<PrimaryPackage> matches = new ArrayList<>();
+        for (String name : candidateNames(spec)) {
+            for (List<PrimaryPackage> evrs : byArch(name).values()) {
+                for (PrimaryPackage pkg : evrs) {
+                    if (spec.matches(pkg)) {
+                        matches.add(pkg);
+                        break;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the names of the packages that can match the spec: its exact name candidates plus, for globs, the range
+     * of sorted names starting with its literal prefix.
+     */
+    Collection<String> candidateNames(PackageSpec spec) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : spec.getExactNameCandidates()) {
+            if (packages.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        if (spec.isGlob()) {
+            String prefix = spec.getLiteralPrefix();
+            int from = Arrays.binarySearch(sortedNames, prefix);
+            for (int i = from < 0 ? -from - 1 : from; i < sortedNames.length && sortedNames[i].startsWith(prefix); i++) {
+                names.add(sortedNames[i]);
+            }
+        }
+        return names;
+    }
+
+    public static class Builder {
+        private final Map<String, Map<String, List<PrimaryPackage>>> packages = new HashMap<>();
+        private int size;
+
+        public Builder add(PrimaryPackage pkg) {
+            packages.computeIfAbsent(pkg.getName(), name -> new HashMap<>())
+                    .computeIfAbsent(pkg.getArch(), arch -> new ArrayList<>())
+                    .add(pkg);
+            size++;
+            return this;
+        }
+
+        public PackageIndex build(String version) {
+            Map<String, Map<String, List<PrimaryPackage>>> frozen = new HashMap<>(packages.size() * 4 / 3 + 1);
+            Map<String, List<PrimaryPackage>> byLabel = new HashMap<>(size * 4 / 3 + 1);
+            for (Map.Entry<String, Map<String, List<PrimaryPackage>>> byName : packages.entrySet()) {
+                Map<String, List<PrimaryPackage>> archs = new HashMap<>(byName.getValue().size() * 4 / 3 + 1);
+                for (Map.Entry<String, List<PrimaryPackage>> byArch : byName.getValue().entrySet()) {
+                    List<PrimaryPackage> evrs = new ArrayList<>(byArch.getValue());
+                    evrs.sort(NEWEST_FIRST);
+                    for (PrimaryPackage pkg : evrs) {
+                        byLabel.computeIfAbsent(pkg.getLabel(), label -> new ArrayList<>(1)).add(pkg);
+                    }
+                    archs.put(byArch.getKey(), Collections.unmodifiableList(evrs));
+                }
+                frozen.put(byName.getKey(), Collections.unmodifiableMap(archs));
+            }
+            return new PackageIndex(version, Collections.unmodifiableMap(frozen), byLabel, size);
+        }
+    }
+}
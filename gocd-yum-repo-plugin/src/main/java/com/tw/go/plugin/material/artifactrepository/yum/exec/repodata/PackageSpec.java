@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Matches packages against a PACKAGE_SPEC the same way repoquery does: the spec is compared with each of
+ * name, name.arch, name-ver, name-ver-rel, name-ver-rel.arch, name-epoch:ver-rel.arch and
+ * epoch:name-ver-rel.arch, using shell glob semantics when the spec contains glob characters. Compiled specs are
+ * immutable and cached, since the same few specs are polled over and over.
+ */
+public class PackageSpec {
+    static final int MAX_CACHED_SPECS = 1024;
+    private static final ConcurrentMap<String, PackageSpec> COMPILED = new ConcurrentHashMap<>();
+
+    private final String spec;
+    private final GlobMatcher pattern;
+
+    private PackageSpec(String spec, GlobMatcher pattern) {
+        this.spec = spec;
+        this.pattern = pattern;
+    }
+
+    public static PackageSpec compile(String spec) {
+        String trimmed = spec.trim();
+        PackageSpec compiled = COMPILED.get(trimmed);
+        if (compiled == null) {
+            compiled = new PackageSpec(trimmed, isGlob(trimmed) ? GlobMatcher.compile(trimmed) : null);
+            if (COMPILED.size() >= MAX_CACHED_SPECS) {
+                COMPILED.clear();
+            }
+            COMPILED.putIfAbsent(trimmed, compiled);
+        }
+        return compiled;
+    }
+
+    public String getSpec() {
+        return spec;
+    }
+
+    public boolean isGlob() {
+        return pattern != null;
+    }
+
+    /**
+     * @return the part of the spec, without any leading epoch, that the name of every matching package starts with.
+     * Empty when a glob could match the epoch:name-ver-rel.arch form of any package, e.g. {@code 1*}.
+     */
+    public String getLiteralPrefix() {
+        String withoutEpoch = withoutEpoch(spec);
+        if (pattern == null) {
+            return withoutEpoch;
+        }
+        int end = 0;
+        boolean digitsOnly = true;
+        while (end < withoutEpoch.length() && "*?[".indexOf(withoutEpoch.charAt(end)) < 0) {
+            digitsOnly &= Character.isDigit(withoutEpoch.charAt(end));
+            end++;
+        }
+        if (digitsOnly && withoutEpoch.equals(spec)) {
+            return "";
+        }
+        return withoutEpoch.substring(0, end);
+    }
+
+    /**
+     * @return the spec without a leading epoch when it names a single name-ver-rel.arch, which can then be looked up
+     * directly. Null for globs and for the shorter spec forms.
+     */
+    String getLabel() {
+        return pattern == null ? withoutEpoch(spec) : null;
+    }
+
+    /**
+     * @return every package name that could match this spec exactly, i.e. the prefixes of the literal prefix that are
+     * followed by a '-' or '.', plus the literal prefix itself for specs without globs. For glob specs any name that
+     * starts with the literal prefix can match as well.
+     */
+    public List<String> getExactNameCandidates() {
+        String prefix = getLiteralPrefix();
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '-' || c == '.') {
+                names.add(prefix.substring(0, i));
+            }
+        }
+        if (pattern == null) {
+            names.add(prefix);
+        }
+        return names;
+    }
+
+    private static String withoutEpoch(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon <= 0) {
+            return spec;
+        }
+        for (int i = 0; i < colon; i++) {
+            if (!Character.isDigit(spec.charAt(i))) {
+                return spec;
+            }
+        }
+        return spec.substring(colon + 1);
+    }
+
+    public boolean matches(PrimaryPackage pkg) {
+        for (String candidate : candidateNames(pkg)) {
+            if (pattern == null ? spec.equals(candidate) : pattern.matches(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String[] candidateNames(PrimaryPackage pkg) {
+        String name = pkg.getName();
+        String arch = pkg.getArch();
+        String ver = pkg.getVersion();
+        String rel = pkg.getRelease();
+        String epoch = pkg.getEpoch();
+        String nameVer = name + "-" + ver;
+        String nameVerRel = nameVer + "-" + rel;
+        String nevra = nameVerRel + "." + arch;
+        return new String[]{
+                name,
+                name + "." + arch,
+                nameVer,
+                nameVerRel,
+                nevra,
+                name + "-" + epoch + ":" + ver + "-" + rel + "." + arch,
+                epoch + ":" + nevra
+        };
+    }
+
+    static boolean isGlob(String spec) {
+        return spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0 || spec.indexOf('[') >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
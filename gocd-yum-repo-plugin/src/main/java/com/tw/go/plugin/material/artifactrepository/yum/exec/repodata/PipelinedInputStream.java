@@ -0,0 +1,191 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Reads a source stream on a background thread and hands its bytes over in fixed size chunks through a bounded queue,
+ * so that inflating the metadata (and reading it off the socket) overlaps with parsing it on the calling thread.
+ * At most {@code depth} chunks are in flight, which keeps the memory footprint constant regardless of the size of the
+ * metadata. The producer closes the source stream once it is done with it, which releases the inflaters and native
+ * decoder contexts of a decompressing source right away instead of when they are garbage collected.
+ */
+class PipelinedInputStream extends InputStream {
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int QUEUE_DEPTH = 8;
+    private static final Chunk END = new Chunk(new byte[0]);
+    private static final ExecutorService PRODUCERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "yum-metadata-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<Chunk> free;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private Chunk current;
+    private int position;
+
+    PipelinedInputStream(InputStream source) {
+        this(source, CHUNK_SIZE, QUEUE_DEPTH);
+    }
+
+    PipelinedInputStream(InputStream source, int chunkSize, int depth) {
+        filled = new ArrayBlockingQueue<>(depth + 1);
+        free = new ArrayBlockingQueue<>(depth);
+        for (int i = 0; i < depth; i++) {
+            free.add(new Chunk(new byte[chunkSize]));
+        }
+        PRODUCERS.execute(() -> pump(source));
+    }
+
+    private void pump(InputStream source) {
+        try {
+            int read = 0;
+            while (!closed && read >= 0) {
+                Chunk chunk = free.take();
+                int length = 0;
+                while (length < chunk.data.length && (read = source.read(chunk.data, length, chunk.data.length - length)) >= 0) {
+                    length += read;
+                }
+                chunk.length = length;
+                if (length > 0) {
+                    filled.put(chunk);
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // the source has not been read to its end, which must not look like the end of the metadata
+            failure = new InterruptedIOException("Interrupted while reading metadata");
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        } finally {
+            closeQuietly(source);
+            filled.offer(END);
+            finished.countDown();
+        }
+    }
+
+    private static void closeQuietly(InputStream source) {
+        try {
+            source.close();
+        } catch (IOException | RuntimeException e) {
+            // everything needed has been read, or the failure that ended reading is reported instead
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!advance()) {
+            return -1;
+        }
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!advance()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length - position;
+    }
+
+    private boolean advance() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (current != null && current != END && position < current.length) {
+            return true;
+        }
+        if (current != END) {
+            if (current != null) {
+                free.offer(current);
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for metadata");
+            }
+            position = 0;
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the producer and waits for it to close the source, so the caller can safely close whatever the source
+     * wraps afterwards. A producer blocked on the source returns once its current read completes or times out.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        free.offer(new Chunk(new byte[0]));
+        boolean interrupted = false;
+        while (true) {
+            try {
+                finished.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Chunk {
+        private final byte[] data;
+        private int length;
+
+        Chunk(byte[] data) {
+            this.data = data;
+        }
+    }
+}
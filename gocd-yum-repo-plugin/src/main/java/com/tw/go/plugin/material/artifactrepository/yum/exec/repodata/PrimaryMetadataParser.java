@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.apache.commons.io.input.CloseShieldInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+public class PrimaryMetadataParser {
+    private static final XMLInputFactory XML_INPUT_FACTORY = XmlInputFactories.newSecureFactory();
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    public static void parse(InputStream stream, Consumer<PrimaryPackage> consumer) throws IOException {
+        try {
+            // the reader closes its source, which stays open for the caller to read on to the end
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(CloseShieldInputStream.wrap(stream));
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && "package".equals(reader.getLocalName())) {
+                        consumer.accept(parsePackage(reader));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse primary metadata: " + e.getMessage(), e);
+        }
+    }
+
+    private static PrimaryPackage parsePackage(XMLStreamReader reader) throws XMLStreamException {
+        String name = null;
+        String arch = null;
+        String epoch = "0";
+        String version = null;
+        String release = null;
+        long buildTime = 0;
+        String packager = null;
+        String url = null;
+        String locationHref = null;
+        String locationBase = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if (depth > 1) {
+                depth++;
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "name":
+                    name = reader.getElementText().trim();
+                    break;
+                case "arch":
+                    arch = reader.getElementText().trim();
+                    break;
+                case "packager":
+                    packager = blankToNull(reader.getElementText());
+                    break;
+                case "url":
+                    url = blankToNull(reader.getElementText());
+                    break;
+                case "version":
+                    String epochValue = reader.getAttributeValue(null, "epoch");
+                    epoch = epochValue == null || epochValue.isEmpty() ? "0" : epochValue;
+                    version = reader.getAttributeValue(null, "ver");
+                    release = reader.getAttributeValue(null, "rel");
+                    depth++;
+                    break;
+                case "time":
+                    buildTime = parseLong(reader.getAttributeValue(null, "build"));
+                    depth++;
+                    break;
+                case "location":
+                    locationHref = reader.getAttributeValue(null, "href");
+                    locationBase = blankToNull(reader.getAttributeValue(XML_NAMESPACE, "base"));
+                    depth++;
+                    break;
+                default:
+                    depth++;
+            }
+        }
+        return new PrimaryPackage(name, arch, epoch, version, release, buildTime, packager, url, locationHref, locationBase);
+    }
+
+    private static String blankToNull(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return value.trim();
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+public class PrimaryPackage {
+    private final String name;
+    private final String arch;
+    private final String epoch;
+    private final String version;
+    private final String release;
+    private final long buildTime;
+    private final String packager;
+    private final String url;
+    private final String locationHref;
+    private final String locationBase;
+
+    public PrimaryPackage(String name, String arch, String epoch, String version, String release, long buildTime, String packager, String url, String locationHref, String locationBase) {
+        this.name = name;
+        this.arch = arch;
+        this.epoch = epoch;
+        this.version = version;
+        this.release = release;
+        this.buildTime = buildTime;
+        this.packager = packager;
+        this.url = url;
+        this.locationHref = locationHref;
+        this.locationBase = locationBase;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getArch() {
+        return arch;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getRelease() {
+        return release;
+    }
+
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    public String getPackager() {
+        return packager;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getLocationHref() {
+        return locationHref;
+    }
+
+    public String getLocationBase() {
+        return locationBase;
+    }
+
+    public String getLabel() {
+        return name + "-" + version + "-" + release + "." + arch;
+    }
+
+    public String getFileName() {
+        return locationHref.substring(locationHref.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "PrimaryPackage{" + epoch + ":" + getLabel() + ", location='" + locationHref + "'}";
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.common.util.ListUtil;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.Constants;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.MultiplePackageException;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static java.lang.String.format;
+
+class QueryResults {
+    private static final Logger LOGGER = Logger.getLoggerFor(QueryResults.class);
+
+    static PackageRevisionMessage singleRevision(RepoQueryParams params, Collection<PrimaryPackage> matches) {
+        if (matches.isEmpty()) {
+            throw queryFailed(params, "No package matched the given spec.");
+        }
+        if (matches.size() > 1) {
+            List<String> fileNames = new ArrayList<>();
+            for (PrimaryPackage match : matches) {
+                fileNames.add(match.getFileName());
+            }
+            Collections.sort(fileNames);
+            String message = format("Given Package Spec (%s) resolves to more than one file on the repository: %s", params.getPackageSpec(), ListUtil.join(fileNames));
+            LOGGER.info(message);
+            throw new MultiplePackageException(message);
+        }
+        return toRevisionMessage(matches.iterator().next(), params.getRepository());
+    }
+
+    static PackageRevisionMessage toRevisionMessage(PrimaryPackage pkg, RepoUrl repository) {
+        PackageRevisionMessage packageRevision = new PackageRevisionMessage(pkg.getLabel(), new Date(pkg.getBuildTime() * 1000), pkg.getPackager(), null, pkg.getUrl());
+        packageRevision.addData(Constants.PACKAGE_LOCATION, location(pkg, repository));
+        packageRevision.addData(Constants.PACKAGE_EPOCH, pkg.getEpoch());
+        return packageRevision;
+    }
+
+    static RuntimeException queryFailed(RepoQueryParams params, String reason) {
+        String message = format("Error while querying repository with path '%s' and package spec '%s'. %s", params.getRepoUrl(), params.getPackageSpec(), reason);
+        LOGGER.info(message);
+        return new RuntimeException(message);
+    }
+
+    private static String location(PrimaryPackage pkg, RepoUrl repository) {
+        String base = pkg.getLocationBase() != null ? pkg.getLocationBase() : repository.getUrlWithBasicAuth();
+        return base.replaceAll("/+$", "") + "/" + pkg.getLocationHref();
+    }
+}
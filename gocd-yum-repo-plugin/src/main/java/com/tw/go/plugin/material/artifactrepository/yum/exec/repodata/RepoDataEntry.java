@@ -0,0 +1,80 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+public class RepoDataEntry {
+    private final String type;
+    private final String location;
+    private final String checksumType;
+    private final String checksum;
+    private final String openChecksumType;
+    private final String openChecksum;
+    private final long size;
+    private final long openSize;
+
+    public RepoDataEntry(String type, String location, String checksumType, String checksum, String openChecksumType, String openChecksum, long size, long openSize) {
+        this.type = type;
+        this.location = location;
+        this.checksumType = checksumType;
+        this.checksum = checksum;
+        this.openChecksumType = openChecksumType;
+        this.openChecksum = openChecksum;
+        this.size = size;
+        this.openSize = openSize;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getChecksumType() {
+        return checksumType;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public String getOpenChecksumType() {
+        return openChecksumType;
+    }
+
+    public String getOpenChecksum() {
+        return openChecksum;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getOpenSize() {
+        return openSize;
+    }
+
+    @Override
+    public String toString() {
+        return "RepoDataEntry{" +
+                "type='" + type + '\'' +
+                ", location='" + location + '\'' +
+                ", checksum='" + checksum + '\'' +
+                '}';
+    }
+}
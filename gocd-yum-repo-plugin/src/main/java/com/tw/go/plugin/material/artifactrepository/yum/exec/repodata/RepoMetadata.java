@@ -0,0 +1,66 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RepoMetadata {
+    public static final String PRIMARY = "primary";
+
+    private final String revision;
+    private final Map<String, RepoDataEntry> data;
+
+    public RepoMetadata(String revision, Map<String, RepoDataEntry> data) {
+        this.revision = revision;
+        this.data = Collections.unmodifiableMap(new LinkedHashMap<>(data));
+    }
+
+    public String getRevision() {
+        return revision;
+    }
+
+    public String getVersion() {
+        RepoDataEntry primary = getPrimary();
+        return revision + "/" + (primary == null ? null : primary.getChecksum());
+    }
+
+    /**
+     * @return a token that only changes when the package list changes, i.e. the checksum of the primary metadata if
+     * it is listed, or null for a repomd.xml without revision and primary metadata
+     */
+    public String getPrimaryVersion() {
+        RepoDataEntry primary = getPrimary();
+        if (primary != null && primary.getChecksum() != null) {
+            return "primary:" + primary.getChecksum();
+        }
+        return revision == null && primary == null ? null : getVersion();
+    }
+
+    public RepoDataEntry get(String type) {
+        return data.get(type);
+    }
+
+    public RepoDataEntry getPrimary() {
+        return get(PRIMARY);
+    }
+
+    public Map<String, RepoDataEntry> getData() {
+        return data;
+    }
+}
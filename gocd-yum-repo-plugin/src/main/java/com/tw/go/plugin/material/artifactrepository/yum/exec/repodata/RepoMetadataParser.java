@@ -0,0 +1,113 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RepoMetadataParser {
+    private static final XMLInputFactory XML_INPUT_FACTORY = XmlInputFactories.newSecureFactory();
+
+    public static RepoMetadata parse(InputStream stream) throws IOException {
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(stream);
+            try {
+                return parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Could not parse repomd.xml: " + e.getMessage(), e);
+        }
+    }
+
+    private static RepoMetadata parse(XMLStreamReader reader) throws XMLStreamException {
+        String revision = null;
+        Map<String, RepoDataEntry> data = new LinkedHashMap<>();
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            if ("revision".equals(reader.getLocalName())) {
+                revision = reader.getElementText().trim();
+            } else if ("data".equals(reader.getLocalName())) {
+                RepoDataEntry entry = parseData(reader);
+                data.put(entry.getType(), entry);
+            }
+        }
+        return new RepoMetadata(revision, data);
+    }
+
+    private static RepoDataEntry parseData(XMLStreamReader reader) throws XMLStreamException {
+        String type = reader.getAttributeValue(null, "type");
+        String location = null;
+        String checksumType = null;
+        String checksum = null;
+        String openChecksumType = null;
+        String openChecksum = null;
+        long size = -1;
+        long openSize = -1;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            switch (reader.getLocalName()) {
+                case "location":
+                    location = reader.getAttributeValue(null, "href");
+                    depth++;
+                    break;
+                case "checksum":
+                    checksumType = reader.getAttributeValue(null, "type");
+                    checksum = reader.getElementText().trim();
+                    break;
+                case "open-checksum":
+                    openChecksumType = reader.getAttributeValue(null, "type");
+                    openChecksum = reader.getElementText().trim();
+                    break;
+                case "size":
+                    size = parseLong(reader.getElementText());
+                    break;
+                case "open-size":
+                    openSize = parseLong(reader.getElementText());
+                    break;
+                default:
+                    depth++;
+            }
+        }
+        return new RepoDataEntry(type, location, checksumType, checksum, openChecksumType, openChecksum, size, openSize);
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheValidators;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.ConditionalResponse;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.FileLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Process-wide registry of repositories keyed by {@link RepoUrl#sharingKey()}. All package materials that point at the
+ * same repository with the same credentials share one {@link MetadataGeneration}, so the metadata of a repository is downloaded and parsed once per
+ * change no matter how many materials use it.
+ * <p>
+ * A generation whose repomd.xml was checked within the last {@link #FRESH_PROPERTY} seconds is handed out without taking
+ * any lock. After that one caller revalidates repomd.xml, while callers that arrive meanwhile keep getting the current
+ * generation instead of waiting for the request.
+ */
+public class RepositoryRegistry {
+    public static final String FRESH_PROPERTY = "go.yum.repomd.fresh.seconds";
+    public static final long DEFAULT_FRESH_SECONDS = 10;
+    private static final Logger LOGGER = Logger.getLoggerFor(RepositoryRegistry.class);
+    private static final RepositoryRegistry INSTANCE = new RepositoryRegistry(MetadataStore.getInstance(), TimeUnit.SECONDS.toMillis(Long.getLong(FRESH_PROPERTY, DEFAULT_FRESH_SECONDS)));
+
+    private final ConcurrentMap<String, Repository> repositories = new ConcurrentHashMap<>();
+    private final MetadataStore store;
+    private final long freshMillis;
+
+    /**
+     * A registry whose metadata is not shared with other processes.
+     */
+    public RepositoryRegistry() {
+        this(null);
+    }
+
+    RepositoryRegistry(MetadataStore store) {
+        this(store, 0);
+    }
+
+    RepositoryRegistry(MetadataStore store, long freshMillis) {
+        this.store = store;
+        this.freshMillis = freshMillis;
+    }
+
+    public static RepositoryRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public MetadataGeneration currentGeneration(RepoUrl url) {
+        return repositories.computeIfAbsent(url.sharingKey(), key -> new Repository(key, url.canonical(), sharedFor(url), freshMillis)).current(url);
+    }
+
+    /**
+     * @return the metadata handed in with the query, or else the current metadata of its repository
+     */
+    public MetadataGeneration generationFor(RepoQueryParams params) {
+        return params.getMetadata() != null ? params.getMetadata() : currentGeneration(params.getRepository());
+    }
+
+    /**
+     * Drops a generation whose metadata files do not match repomd.xml and makes the one before it current again, so
+     * queries keep being answered from the last good index and the next check of repomd.xml retries the download.
+     *
+     * @return the generation now current, or null if there is none other than the rejected one
+     */
+    public MetadataGeneration reject(RepoUrl url, MetadataGeneration corrupt) {
+        corrupt.reject();
+        Repository repository = repositories.get(url.sharingKey());
+        return repository == null ? null : repository.reject(corrupt);
+    }
+
+    /**
+     * Remote repositories share repomd.xml through the metadata store, so a change fetched by one process is adopted by
+     * every other process polling the same repository.
+     */
+    private SharedRepoMetadata sharedFor(RepoUrl url) {
+        return store == null || url.isLocal() ? null : new SharedRepoMetadata(store.directoryOf(url));
+    }
+
+    static String lockKey(String key) {
+        return "repomd:" + key;
+    }
+
+    public long getGenerationsLoaded(RepoUrl url) {
+        Repository repository = repositories.get(url.sharingKey());
+        return repository == null ? 0 : repository.generationsLoaded.get();
+    }
+
+    private static class Repository {
+        private final String key;
+        private final String canonicalUrl;
+        private final SharedRepoMetadata shared;
+        private final long freshMillis;
+        private final AtomicLong generationsLoaded = new AtomicLong();
+        private volatile MetadataGeneration generation;
+        private MetadataGeneration previous;
+
+        private Repository(String key, String canonicalUrl, SharedRepoMetadata shared, long freshMillis) {
+            this.key = key;
+            this.canonicalUrl = canonicalUrl;
+            this.shared = shared;
+            this.freshMillis = freshMillis;
+        }
+
+        private MetadataGeneration current(RepoUrl url) {
+            long requestedAt = System.nanoTime();
+            long requestedAtMillis = System.currentTimeMillis();
+            MetadataGeneration current = generation;
+            if (current == null) {
+                // nothing to answer with yet, so wait for whoever loads the first generation
+                try (RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire(lockKey(key), RepositoryLockManager.Mode.WRITE);
+                     FileLockManager.Lease sharedLease = shared == null ? null : FileLockManager.getInstance().acquire(shared.lockFile(), RepositoryLockManager.Mode.WRITE)) {
+                    return refresh(url, requestedAt, requestedAtMillis);
+                }
+            }
+            if (TimeUnit.NANOSECONDS.toMillis(requestedAt - current.getCheckedAt()) < freshMillis) {
+                return current;
+            }
+            try (RepositoryLockManager.Lease lease = RepositoryLockManager.getInstance().tryAcquire(lockKey(key), RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS);
+                 FileLockManager.Lease sharedLease = lease == null || shared == null ? null : FileLockManager.getInstance().tryAcquire(shared.lockFile(), RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS)) {
+                if (lease == null || (shared != null && sharedLease == null)) {
+                    // being revalidated by another material or process
+                    return current;
+                }
+                return refresh(url, requestedAt, requestedAtMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(format("Interrupted while checking repomd.xml of %s", canonicalUrl));
+            }
+        }
+
+        /**
+         * Revalidates repomd.xml, unless another material or process did so while this one was waiting for the locks.
+         * Both locks must be held.
+         */
+        private MetadataGeneration refresh(RepoUrl url, long requestedAt, long requestedAtMillis) {
+            MetadataGeneration current = generation;
+            if (current != null && current.getCheckedAt() - requestedAt >= 0) {
+                // refreshed by another material while this one was waiting
+                return current;
+            }
+            SharedRepoMetadata.Snapshot snapshot = shared == null ? null : shared.read();
+            if (snapshot != null && snapshot.getCheckedAt() >= requestedAtMillis - freshMillis) {
+                // refreshed by another process while this one was waiting, or recently enough
+                return adopt(current, snapshot.getMetadata(), snapshot.getValidators());
+            }
+            RepoMetadata known = current != null ? current.getMetadata() : snapshot != null ? snapshot.getMetadata() : null;
+            CacheValidators validators = current != null ? current.getValidators() : snapshot != null ? snapshot.getValidators() : CacheValidators.NONE;
+            ConditionalResponse<byte[]> response = url.fetchIfModified(NativeQueryEngine.REPOMD_PATH, validators, IOUtils::toByteArray);
+            RepoMetadata metadata = response.isModified() ? parse(response.getBody()) : known;
+            byte[] repomd = response.isModified() ? response.getBody() : snapshot != null && snapshot.getMetadata().getVersion().equals(known.getVersion()) ? snapshot.getRepomd() : null;
+            if (shared != null && repomd != null) {
+                share(repomd, response.getValidators());
+            }
+            return adopt(current, metadata, response.getValidators());
+        }
+
+        private MetadataGeneration adopt(MetadataGeneration current, RepoMetadata metadata, CacheValidators validators) {
+            if (current != null && current.getVersion().equals(metadata.getVersion())) {
+                current.confirm(validators);
+                return current;
+            }
+            previous = current;
+            generation = new MetadataGeneration(metadata, validators);
+            generationsLoaded.incrementAndGet();
+            LOGGER.debug(format("Loaded metadata revision %s of %s", metadata.getRevision(), canonicalUrl));
+            return generation;
+        }
+
+        private static RepoMetadata parse(byte[] repomd) {
+            try {
+                return RepoMetadataParser.parse(new ByteArrayInputStream(repomd));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * Failing to share only costs other processes a download, so it does not fail the poll.
+         */
+        private void share(byte[] repomd, CacheValidators validators) {
+            try {
+                shared.write(repomd, validators, System.currentTimeMillis());
+            } catch (IOException e) {
+                LOGGER.warn(format("Could not share repomd.xml of %s with other processes: %s", canonicalUrl, e.getMessage()));
+            }
+        }
+
+        private MetadataGeneration reject(MetadataGeneration corrupt) {
+            try (RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire(lockKey(key), RepositoryLockManager.Mode.WRITE);
+                 FileLockManager.Lease sharedLease = shared == null ? null : FileLockManager.getInstance().acquire(shared.lockFile(), RepositoryLockManager.Mode.WRITE)) {
+                if (generation == corrupt) {
+                    generation = previous;
+                    previous = null;
+                    LOGGER.warn(format("Rejected metadata revision %s of %s", corrupt.getMetadata().getRevision(), canonicalUrl));
+                }
+                SharedRepoMetadata.Snapshot snapshot = shared == null ? null : shared.read();
+                if (snapshot != null && snapshot.getMetadata().getVersion().equals(corrupt.getVersion())) {
+                    // other processes fetch repomd.xml again instead of adopting the rejected one
+                    shared.clear();
+                }
+                return generation == corrupt ? null : generation;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
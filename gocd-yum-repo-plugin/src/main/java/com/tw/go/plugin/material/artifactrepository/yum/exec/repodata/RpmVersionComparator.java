@@ -0,0 +1,232 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+/**
+ * RPM version ordering, compatible with rpmvercmp() in rpm's lib/rpmvercmp.c, including the '~' (sorts before
+ * everything) and '^' (sorts after the base version only) separators. Segments are compared in place, so comparing
+ * allocates nothing; this sits on the hot path of sorting every package of a repository by EVR.
+ */
+public final class RpmVersionComparator {
+    private RpmVersionComparator() {
+    }
+
+    /**
+     * Compares two epoch:version-release triples. A null or empty epoch counts as 0.
+     */
+    public static int compareEvr(String epoch1, String version1, String release1, String epoch2, String version2, String release2) {
+        int result = compareEpochs(epoch1, epoch2);
+        if (result != 0) {
+            return result;
+        }
+        result = rpmvercmp(version1, version2);
+        if (result != 0) {
+            return result;
+        }
+        return rpmvercmp(release1, release2);
+    }
+
+    /**
+     * Compares two name-version-release.arch revision labels of the same name.arch by epoch, version and release.
+     * An epoch that is not known (null) is taken to be equal to the other one.
+     *
+     * @return as {@link #rpmvercmp(CharSequence, CharSequence)}, or null when the labels are not of the same name.arch
+     * or not in name-version-release.arch form, and so cannot be ordered by EVR.
+     */
+    public static Integer compareLabels(String label1, String epoch1, String label2, String epoch2) {
+        int arch1 = label1.lastIndexOf('.');
+        int release1 = label1.lastIndexOf('-', arch1);
+        int version1 = release1 <= 0 ? -1 : label1.lastIndexOf('-', release1 - 1);
+        int arch2 = label2.lastIndexOf('.');
+        int release2 = label2.lastIndexOf('-', arch2);
+        int version2 = release2 <= 0 ? -1 : label2.lastIndexOf('-', release2 - 1);
+        if (version1 <= 0 || version2 <= 0
+                || !regionEquals(label1, 0, version1, label2, 0, version2)
+                || !regionEquals(label1, arch1, label1.length(), label2, arch2, label2.length())) {
+            return null;
+        }
+        int result = epoch1 == null || epoch2 == null ? 0 : compareEpochs(epoch1, epoch2);
+        if (result == 0) {
+            result = rpmvercmp(label1, version1 + 1, release1, label2, version2 + 1, release2);
+        }
+        if (result == 0) {
+            result = rpmvercmp(label1, release1 + 1, arch1, label2, release2 + 1, arch2);
+        }
+        return result;
+    }
+
+    public static int rpmvercmp(CharSequence a, CharSequence b) {
+        return rpmvercmp(a, 0, a == null ? 0 : a.length(), b, 0, b == null ? 0 : b.length());
+    }
+
+    /**
+     * rpmvercmp over the regions [aStart, aEnd) of {@code a} and [bStart, bEnd) of {@code b}.
+     *
+     * @return a negative number, zero or a positive number as the first version is older than, equal to or newer than
+     * the second.
+     */
+    public static int rpmvercmp(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd) {
+        if (regionEquals(a, aStart, aEnd, b, bStart, bEnd)) {
+            return 0;
+        }
+        int one = aStart;
+        int two = bStart;
+        while (one < aEnd || two < bEnd) {
+            while (one < aEnd && isSeparator(a.charAt(one))) {
+                one++;
+            }
+            while (two < bEnd && isSeparator(b.charAt(two))) {
+                two++;
+            }
+
+            char c1 = one < aEnd ? a.charAt(one) : 0;
+            char c2 = two < bEnd ? b.charAt(two) : 0;
+            if (c1 == '~' || c2 == '~') {
+                if (c1 != '~') {
+                    return 1;
+                }
+                if (c2 != '~') {
+                    return -1;
+                }
+                one++;
+                two++;
+                continue;
+            }
+            if (c1 == '^' || c2 == '^') {
+                if (one == aEnd) {
+                    return -1;
+                }
+                if (two == bEnd) {
+                    return 1;
+                }
+                if (c1 != '^') {
+                    return 1;
+                }
+                if (c2 != '^') {
+                    return -1;
+                }
+                one++;
+                two++;
+                continue;
+            }
+            if (one == aEnd || two == bEnd) {
+                break;
+            }
+
+            int end1 = one;
+            int end2 = two;
+            boolean numeric = isDigit(c1);
+            if (numeric) {
+                while (end1 < aEnd && isDigit(a.charAt(end1))) {
+                    end1++;
+                }
+                while (end2 < bEnd && isDigit(b.charAt(end2))) {
+                    end2++;
+                }
+            } else {
+                while (end1 < aEnd && isAlpha(a.charAt(end1))) {
+                    end1++;
+                }
+                while (end2 < bEnd && isAlpha(b.charAt(end2))) {
+                    end2++;
+                }
+            }
+            if (end2 == two) {
+                return numeric ? 1 : -1;
+            }
+
+            if (numeric) {
+                while (one < end1 && a.charAt(one) == '0') {
+                    one++;
+                }
+                while (two < end2 && b.charAt(two) == '0') {
+                    two++;
+                }
+                int length1 = end1 - one;
+                int length2 = end2 - two;
+                if (length1 != length2) {
+                    return length1 > length2 ? 1 : -1;
+                }
+            }
+            int result = compareRegions(a, one, end1, b, two, end2);
+            if (result != 0) {
+                return result;
+            }
+            one = end1;
+            two = end2;
+        }
+        if (one == aEnd && two == bEnd) {
+            return 0;
+        }
+        return one < aEnd ? 1 : -1;
+    }
+
+    private static int compareEpochs(String epoch1, String epoch2) {
+        return Long.compare(epochValue(epoch1), epochValue(epoch2));
+    }
+
+    private static long epochValue(String epoch) {
+        if (epoch == null || epoch.isEmpty()) {
+            return 0;
+        }
+        long value = 0;
+        for (int i = 0; i < epoch.length(); i++) {
+            char c = epoch.charAt(i);
+            if (!isDigit(c)) {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean regionEquals(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) {
+            return false;
+        }
+        for (int i = 0; i < aEnd - aStart; i++) {
+            if (a.charAt(aStart + i) != b.charAt(bStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int compareRegions(CharSequence a, int aStart, int aEnd, CharSequence b, int bStart, int bEnd) {
+        int length = Math.min(aEnd - aStart, bEnd - bStart);
+        for (int i = 0; i < length; i++) {
+            char c1 = a.charAt(aStart + i);
+            char c2 = b.charAt(bStart + i);
+            if (c1 != c2) {
+                return c1 < c2 ? -1 : 1;
+            }
+        }
+        return Integer.compare(aEnd - aStart, bEnd - bStart);
+    }
+
+    private static boolean isSeparator(char c) {
+        return !isDigit(c) && !isAlpha(c) && c != '~' && c != '^';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAlpha(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheValidators;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * The repomd.xml of a repository as last fetched by any process that shares go.yum.tmpdir, with its cache validators
+ * and the time it was checked. Only read or written while holding the write lock of {@link #lockFile()}.
+ */
+class SharedRepoMetadata {
+    private static final String REPOMD = "repomd.xml";
+    private static final String STATE = "repomd.properties";
+    private final File directory;
+
+    SharedRepoMetadata(File directory) {
+        this.directory = directory;
+    }
+
+    File lockFile() {
+        return new File(directory, "repomd.lock");
+    }
+
+    /**
+     * @return the last repomd.xml written, or null if there is none or it cannot be read
+     */
+    Snapshot read() {
+        Properties state = new Properties();
+        try (InputStream in = Files.newInputStream(new File(directory, STATE).toPath())) {
+            state.load(in);
+            byte[] repomd = Files.readAllBytes(new File(directory, REPOMD).toPath());
+            if (!DigestUtils.sha256Hex(repomd).equals(state.getProperty("sha256"))) {
+                return null;
+            }
+            CacheValidators validators = new CacheValidators(state.getProperty("etag"), state.getProperty("lastModified"));
+            return new Snapshot(repomd, RepoMetadataParser.parse(new ByteArrayInputStream(repomd)), validators, Long.parseLong(state.getProperty("checkedAt")));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    void write(byte[] repomd, CacheValidators validators, long checkedAt) throws IOException {
+        replace(REPOMD, out -> out.write(repomd));
+        Properties state = new Properties();
+        state.setProperty("sha256", DigestUtils.sha256Hex(repomd));
+        state.setProperty("checkedAt", Long.toString(checkedAt));
+        if (validators.getEtag() != null) {
+            state.setProperty("etag", validators.getEtag());
+        }
+        if (validators.getLastModified() != null) {
+            state.setProperty("lastModified", validators.getLastModified());
+        }
+        replace(STATE, out -> state.store(out, null));
+    }
+
+    void clear() throws IOException {
+        Files.deleteIfExists(new File(directory, STATE).toPath());
+    }
+
+    private interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private void replace(String name, Content content) throws IOException {
+        directory.mkdirs();
+        File temp = File.createTempFile(name, MetadataStore.TEMP_SUFFIX, directory);
+        try {
+            try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+                content.writeTo(out);
+            }
+            Files.move(temp.toPath(), new File(directory, name).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    static class Snapshot {
+        private final byte[] repomd;
+        private final RepoMetadata metadata;
+        private final CacheValidators validators;
+        private final long checkedAt;
+
+        private Snapshot(byte[] repomd, RepoMetadata metadata, CacheValidators validators, long checkedAt) {
+            this.repomd = repomd;
+            this.metadata = metadata;
+            this.validators = validators;
+            this.checkedAt = checkedAt;
+        }
+
+        byte[] getRepomd() {
+            return repomd;
+        }
+
+        RepoMetadata getMetadata() {
+            return metadata;
+        }
+
+        CacheValidators getValidators() {
+            return validators;
+        }
+
+        long getCheckedAt() {
+            return checkedAt;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.CacheJanitor;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.FileLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.PackageQueryEngine;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+
+/**
+ * Answers package specs with indexed queries against the primary_db (primary.sqlite) published by createrepo. The
+ * database is downloaded once per repository revision and only the rows that can match a spec are read, so memory
+ * use does not grow with the size of the repository.
+ */
+public class SqliteQueryEngine implements PackageQueryEngine {
+    static final String PRIMARY_DB = "primary_db";
+    private static final String SELECT_PACKAGES = "SELECT name, arch, epoch, version, release, time_build, rpm_packager, url, location_href, location_base FROM packages";
+    private static final Logger LOGGER = Logger.getLoggerFor(SqliteQueryEngine.class);
+
+    private final RepositoryRegistry registry;
+    private final MetadataStore store = MetadataStore.getInstance();
+    // the database each repository directory was last cleaned up for
+    private final ConcurrentMap<File, File> cleanedUp = new ConcurrentHashMap<>();
+
+    public SqliteQueryEngine() {
+        this(RepositoryRegistry.getInstance());
+    }
+
+    public SqliteQueryEngine(RepositoryRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public PackageRevisionMessage query(RepoQueryParams params) {
+        RepoUrl repository = params.getRepository();
+        PackageSpec spec = PackageSpec.compile(params.getPackageSpec());
+        Collection<PrimaryPackage> matches;
+        try {
+            MetadataGeneration generation = registry.generationFor(params);
+            try {
+                matches = newestMatches(repository, generation, spec);
+            } catch (RuntimeException e) {
+                MetadataGeneration lastGood = CorruptMetadataException.isCauseOf(e) ? registry.reject(repository, generation) : null;
+                if (lastGood == null) {
+                    throw e;
+                }
+                LOGGER.warn(format("Answering from metadata revision %s of %s: %s", lastGood.getMetadata().getRevision(), repository.forDisplay(), e.getMessage()));
+                matches = newestMatches(repository, lastGood, spec);
+            }
+        } catch (UnsupportedMetadataException e) {
+            throw e;
+        } catch (SQLException e) {
+            throw QueryResults.queryFailed(params, e.getMessage());
+        } catch (RuntimeException e) {
+            throw QueryResults.queryFailed(params, e.getMessage());
+        }
+        return QueryResults.singleRevision(params, matches);
+    }
+
+    File databaseFor(RepoUrl repository) {
+        return databaseFor(repository, registry.currentGeneration(repository));
+    }
+
+    /**
+     * The leases are released before a corrupt generation is rejected: rejecting takes the write lock of repomd.xml,
+     * which may share a stripe with the read lock of the database.
+     */
+    private Collection<PrimaryPackage> newestMatches(RepoUrl repository, MetadataGeneration generation, PackageSpec spec) throws SQLException {
+        Collection<PrimaryPackage> matches;
+        File database;
+        // the read lock keeps the database from being deleted as stale while it is queried
+        try (CacheJanitor.Lease cache = CacheJanitor.getInstance().use(store.directoryOf(repository));
+             RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire(lockKey(repository), RepositoryLockManager.Mode.READ);
+             FileLockManager.Lease shared = FileLockManager.getInstance().acquire(lockFile(repository), RepositoryLockManager.Mode.READ)) {
+            database = databaseFor(repository, generation);
+            matches = newestMatches(database, spec);
+        }
+        if (!database.equals(cleanedUp.get(database.getParentFile())) && deleteStaleDatabases(repository, database)) {
+            cleanedUp.put(database.getParentFile(), database);
+        }
+        return matches;
+    }
+
+    private File databaseFor(RepoUrl repository, MetadataGeneration generation) {
+        RepoDataEntry primaryDb = generation.getMetadata().get(PRIMARY_DB);
+        if (primaryDb == null || primaryDb.getLocation() == null) {
+            throw new UnsupportedMetadataException(format("No primary_db metadata listed in %s.", repository.getRepoMetadataUrl()));
+        }
+        return generation.derive(PRIMARY_DB, g -> download(repository, primaryDb));
+    }
+
+    private File download(RepoUrl repository, RepoDataEntry primaryDb) {
+        File directory = store.directoryOf(repository);
+        String id = primaryDb.getChecksum() != null && primaryDb.getChecksum().matches("[0-9a-fA-F]+") ? primaryDb.getChecksum() : DigestUtils.sha256Hex(primaryDb.getLocation());
+        File database = new File(directory, "primary-" + id + ".sqlite");
+        if (!database.exists()) {
+            long start = System.currentTimeMillis();
+            boolean written;
+            try {
+                written = store.link(database, primaryDb.getChecksum(), ".sqlite", temp -> repository.fetch(primaryDb.getLocation(), stream -> {
+                    try (InputStream decompressed = MetadataStreams.pipeline(primaryDb, stream)) {
+                        Files.copy(decompressed, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return null;
+                }));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (written) {
+                LOGGER.debug(format("Downloaded %s of %s in %d ms", primaryDb.getLocation(), repository.forDisplay(), System.currentTimeMillis() - start));
+            }
+        }
+        return database;
+    }
+
+    private File lockFile(RepoUrl repository) {
+        return new File(store.directoryOf(repository), PRIMARY_DB + ".lock");
+    }
+
+    private static String lockKey(RepoUrl repository) {
+        return "primary_db:" + repository.canonical();
+    }
+
+    /**
+     * Done once per database that becomes current, and only when no other query is reading a database of the
+     * repository; otherwise a later query cleans up.
+     *
+     * @return whether the stale databases were deleted
+     */
+    private boolean deleteStaleDatabases(RepoUrl repository, File current) {
+        RepositoryLockManager.Lease lease;
+        try {
+            lease = RepositoryLockManager.getInstance().tryAcquire(lockKey(repository), RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (lease == null) {
+            return false;
+        }
+        try (RepositoryLockManager.Lease ignored = lease) {
+            // nor any other process
+            FileLockManager.Lease shared = FileLockManager.getInstance().tryAcquire(lockFile(repository), RepositoryLockManager.Mode.WRITE, 0, TimeUnit.MILLISECONDS);
+            if (shared == null) {
+                return false;
+            }
+            try (FileLockManager.Lease ignoredToo = shared) {
+                deleteStaleDatabases(store.directoryOf(repository), current);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        store.removeUnreferenced();
+        return true;
+    }
+
+    private void deleteStaleDatabases(File directory, File current) {
+        File[] databases = directory.listFiles((dir, name) -> name.startsWith("primary-") && name.endsWith(".sqlite"));
+        if (databases == null) {
+            return;
+        }
+        for (File database : databases) {
+            if (!database.equals(current) && !database.delete()) {
+                LOGGER.warn(format("Could not delete stale metadata database %s", database));
+            }
+        }
+    }
+
+    Collection<PrimaryPackage> newestMatches(File database, PackageSpec spec) throws SQLException {
+        List<String> conditions = new ArrayList<>();
+        List<String> parameters = new ArrayList<>();
+        if (spec.isGlob() && !spec.getLiteralPrefix().isEmpty()) {
+            conditions.add("name GLOB ?");
+            parameters.add(spec.getLiteralPrefix() + "*");
+        }
+        List<String> names = spec.getExactNameCandidates();
+        if (!names.isEmpty()) {
+            conditions.add("name IN (" + String.join(", ", Collections.nCopies(names.size(), "?")) + ")");
+            parameters.addAll(names);
+        }
+        String sql = SELECT_PACKAGES;
+        if (!spec.isGlob() || !spec.getLiteralPrefix().isEmpty()) {
+            sql += " WHERE " + String.join(" OR ", conditions);
+        }
+
+        Map<String, PrimaryPackage> newestByNameArch = new HashMap<>();
+        try (Connection connection = connect(database);
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setString(i + 1, parameters.get(i));
+            }
+            try (ResultSet rows = statement.executeQuery()) {
+                while (rows.next()) {
+                    PrimaryPackage pkg = toPackage(rows);
+                    if (spec.matches(pkg)) {
+                        newestByNameArch.merge(pkg.getName() + "." + pkg.getArch(), pkg, (current, candidate) -> PackageIndex.NEWEST_FIRST.compare(candidate, current) < 0 ? candidate : current);
+                    }
+                }
+            }
+        }
+        return newestByNameArch.values();
+    }
+
+    private PrimaryPackage toPackage(ResultSet rows) throws SQLException {
+        String epoch = rows.getString("epoch");
+        return new PrimaryPackage(rows.getString("name"), rows.getString("arch"), epoch == null || epoch.isEmpty() ? "0" : epoch,
+                rows.getString("version"), rows.getString("release"), rows.getLong("time_build"), blankToNull(rows.getString("rpm_packager")),
+                blankToNull(rows.getString("url")), rows.getString("location_href"), blankToNull(rows.getString("location_base")));
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    private Connection connect(File database) throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new UnsupportedMetadataException("The SQLite JDBC driver is not available.");
+        }
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", "1");
+        return DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath(), properties);
+    }
+}
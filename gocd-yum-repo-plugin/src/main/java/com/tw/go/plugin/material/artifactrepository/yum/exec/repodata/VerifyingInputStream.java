@@ -0,0 +1,141 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+import static java.lang.String.format;
+
+/**
+ * Digests and counts the bytes read through it, and compares both with what repomd.xml lists once the end of the
+ * stream is reached. Reading more bytes than listed fails right away. An upstream stream, like the compressed bytes
+ * under a decompressor, is read to its end and verified first.
+ */
+class VerifyingInputStream extends FilterInputStream {
+    private final String description;
+    private final MessageDigest digest;
+    private final String checksum;
+    private final long size;
+    private final VerifyingInputStream upstream;
+    private long count;
+    private boolean verified;
+
+    VerifyingInputStream(InputStream in, String description, String checksumType, String checksum, long size, VerifyingInputStream upstream) {
+        super(in);
+        this.description = description;
+        this.digest = checksum == null ? null : digestFor(checksumType);
+        this.checksum = checksum;
+        this.size = size;
+        this.upstream = upstream;
+    }
+
+    /**
+     * @return a digest for a checksum type of repomd.xml such as "sha256" or "sha", or null if it is not known
+     */
+    static MessageDigest digestFor(String checksumType) {
+        String type = checksumType == null ? "sha256" : checksumType.toLowerCase(Locale.ROOT);
+        String algorithm = type.equals("sha") || type.equals("sha1") ? "SHA-1" : type.startsWith("sha") ? "SHA-" + type.substring(3) : type.toUpperCase(Locale.ROOT);
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            verify();
+        } else {
+            update(1);
+            if (digest != null) {
+                digest.update((byte) b);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read < 0) {
+            verify();
+        } else {
+            update(read);
+            if (digest != null) {
+                digest.update(b, off, read);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void update(int read) throws CorruptMetadataException {
+        count += read;
+        if (size > 0 && count > size) {
+            throw new CorruptMetadataException(format("%s is larger than the %d bytes listed in repomd.xml", description, size));
+        }
+    }
+
+    private void verify() throws IOException {
+        if (verified) {
+            return;
+        }
+        verified = true;
+        if (upstream != null) {
+            upstream.transferTo(OutputStream.nullOutputStream());
+            upstream.verify();
+        }
+        if (size > 0 && count != size) {
+            throw new CorruptMetadataException(format("%s has %d bytes instead of the %d listed in repomd.xml", description, count, size));
+        }
+        if (digest != null) {
+            String actual = Hex.encodeHexString(digest.digest());
+            if (!actual.equalsIgnoreCase(checksum)) {
+                throw new CorruptMetadataException(format("%s has checksum %s instead of the %s listed in repomd.xml", description, actual, checksum));
+            }
+        }
+    }
+}
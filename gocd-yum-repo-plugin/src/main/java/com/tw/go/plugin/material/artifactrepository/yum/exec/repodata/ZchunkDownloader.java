@@ -0,0 +1,280 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.thoughtworks.go.plugin.api.logging.Logger;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.ByteRange;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.FileLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps the zchunk primary metadata of a repository on disk and brings it up to date by downloading only the chunks
+ * that are not in the previous generation. The result must match the checksum listed in repomd.xml; if it does not,
+ * or the server ignores range requests, the whole file is downloaded instead.
+ */
+class ZchunkDownloader {
+    static final String ENABLED_PROPERTY = "go.yum.zchunk";
+    static final int HEADER_PROBE_SIZE = 64 * 1024;
+    static final int MAX_RANGES_PER_REQUEST = 32;
+    private static final String PREFIX = "primary-";
+    private static final String SUFFIX = ".xml.zck";
+    private static final Logger LOGGER = Logger.getLoggerFor(ZchunkDownloader.class);
+
+    private final MetadataStore store;
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong bytesReused = new AtomicLong();
+
+    ZchunkDownloader() {
+        this(MetadataStore.getInstance());
+    }
+
+    ZchunkDownloader(MetadataStore store) {
+        this.store = store;
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    File download(RepoUrl repository, RepoDataEntry entry) {
+        if (entry.getChecksum() == null || !entry.getChecksum().matches("[0-9a-fA-F]+")) {
+            throw new UnsupportedMetadataException(format("No checksum listed for %s in %s.", entry.getLocation(), repository.getRepoMetadataUrl()));
+        }
+        File directory = store.directoryOf(repository);
+        try (RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire("primary_zck:" + repository.canonical(), RepositoryLockManager.Mode.WRITE);
+             FileLockManager.Lease shared = FileLockManager.getInstance().acquire(new File(directory, NativeQueryEngine.PRIMARY_ZCK + ".lock"), RepositoryLockManager.Mode.WRITE)) {
+            File target = new File(directory, PREFIX + entry.getChecksum().toLowerCase(Locale.ROOT) + SUFFIX);
+            if (!target.exists()) {
+                long start = System.currentTimeMillis();
+                File previous = previousGeneration(directory);
+                // another repository may have stored this generation already
+                if (store.link(target, entry.getChecksum(), SUFFIX, temp -> update(repository, entry, previous, temp))) {
+                    LOGGER.debug(format("Updated %s of %s in %d ms", entry.getLocation(), repository.forDisplay(), System.currentTimeMillis() - start));
+                }
+                deleteOtherGenerations(directory, target);
+                store.removeUnreferenced();
+            }
+            return target;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void update(RepoUrl repository, RepoDataEntry entry, File previous, File temp) throws IOException {
+        long downloaded = previous == null ? -1 : downloadDelta(repository, entry, previous, temp);
+        if (downloaded >= 0 && !matchesChecksum(entry, temp)) {
+            LOGGER.warn(format("Reassembled %s of %s does not match its checksum, downloading it in full", entry.getLocation(), repository.forDisplay()));
+            downloaded = -1;
+        }
+        if (downloaded < 0) {
+            downloaded = downloadFully(repository, entry, temp);
+        }
+        bytesDownloaded.addAndGet(downloaded);
+        bytesReused.addAndGet(temp.length() - downloaded);
+    }
+
+    long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    long getBytesReused() {
+        return bytesReused.get();
+    }
+
+    /**
+     * @return the number of bytes downloaded, or -1 if the server does not serve ranges
+     */
+    private long downloadDelta(RepoUrl repository, RepoDataEntry entry, File previous, File temp) throws IOException {
+        byte[] header = fetchHeader(repository, entry.getLocation());
+        if (header == null) {
+            return -1;
+        }
+        ZchunkHeader current = ZchunkHeader.read(new ByteArrayInputStream(header));
+        ZchunkHeader old;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(previous))) {
+            old = ZchunkHeader.read(in);
+        } catch (IOException | UnsupportedMetadataException e) {
+            LOGGER.warn(format("Ignoring unreadable previous zchunk metadata %s: %s", previous, e.getMessage()));
+            return -1;
+        }
+        Map<String, ZchunkHeader.Chunk> reusable = new HashMap<>();
+        if (old.getChunkChecksumType() == current.getChunkChecksumType()) {
+            for (ZchunkHeader.Chunk chunk : old.getChunks()) {
+                reusable.put(chunk.getChecksum() + "/" + chunk.getLength(), chunk);
+            }
+        }
+        List<ByteRange> missing = new ArrayList<>();
+        long downloaded = header.length;
+        try (FileChannel source = FileChannel.open(previous.toPath(), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            target.write(ByteBuffer.wrap(header), 0);
+            for (ZchunkHeader.Chunk chunk : current.getChunks()) {
+                if (chunk.getLength() == 0) {
+                    continue;
+                }
+                ZchunkHeader.Chunk known = reusable.get(chunk.getChecksum() + "/" + chunk.getLength());
+                if (known != null) {
+                    copy(source, known.getOffset(), target, chunk.getOffset(), chunk.getLength());
+                } else {
+                    missing.add(new ByteRange(chunk.getOffset(), chunk.getEnd() - 1));
+                }
+            }
+            missing = coalesce(missing);
+            for (int i = 0; i < missing.size(); i += MAX_RANGES_PER_REQUEST) {
+                List<ByteRange> batch = missing.subList(i, Math.min(missing.size(), i + MAX_RANGES_PER_REQUEST));
+                boolean served = repository.fetchRanges(entry.getLocation(), batch, (range, part) -> write(part, target, range.getFirst()));
+                if (!served) {
+                    return -1;
+                }
+                for (ByteRange range : batch) {
+                    downloaded += range.length();
+                }
+            }
+            target.truncate(current.getFileLength());
+        }
+        return downloaded;
+    }
+
+    private byte[] fetchHeader(RepoUrl repository, String location) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        if (!repository.fetchRanges(location, Collections.singletonList(new ByteRange(0, HEADER_PROBE_SIZE - 1)), (range, part) -> part.transferTo(header))) {
+            return null;
+        }
+        long length = ZchunkHeader.lengthOf(header.toByteArray());
+        if (length > header.size()) {
+            if (!repository.fetchRanges(location, Collections.singletonList(new ByteRange(header.size(), length - 1)), (range, part) -> part.transferTo(header))) {
+                return null;
+            }
+        }
+        byte[] bytes = header.toByteArray();
+        if (bytes.length < length) {
+            throw new IOException(format("Truncated zchunk header of %s", location));
+        }
+        return bytes.length == length ? bytes : Arrays.copyOf(bytes, (int) length);
+    }
+
+    /**
+     * The checksum is verified while the file is written, so a corrupt download fails without reading it again.
+     */
+    private long downloadFully(RepoUrl repository, RepoDataEntry entry, File temp) {
+        repository.fetch(entry.getLocation(), stream -> Files.copy(new VerifyingInputStream(stream, entry.getLocation(), entry.getChecksumType(), entry.getChecksum(), entry.getSize(), null), temp.toPath(), StandardCopyOption.REPLACE_EXISTING));
+        return temp.length();
+    }
+
+    static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        List<ByteRange> coalesced = new ArrayList<>();
+        for (ByteRange range : ranges) {
+            ByteRange last = coalesced.isEmpty() ? null : coalesced.get(coalesced.size() - 1);
+            if (last != null && last.getLast() + 1 == range.getFirst()) {
+                coalesced.set(coalesced.size() - 1, new ByteRange(last.getFirst(), range.getLast()));
+            } else {
+                coalesced.add(range);
+            }
+        }
+        return coalesced;
+    }
+
+    private static void copy(FileChannel source, long from, FileChannel target, long to, long length) throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            long count = source.transferTo(from + copied, length - copied, target.position(to + copied));
+            if (count <= 0) {
+                throw new IOException("Previous zchunk metadata is shorter than its index");
+            }
+            copied += count;
+        }
+    }
+
+    private static void write(InputStream part, FileChannel target, long offset) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long position = offset;
+        for (int read = part.read(buffer); read >= 0; read = part.read(buffer)) {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+            while (bytes.hasRemaining()) {
+                position += target.write(bytes, position);
+            }
+        }
+    }
+
+    private static boolean matchesChecksum(RepoDataEntry entry, File file) throws IOException {
+        MessageDigest digest = digestFor(entry.getChecksumType());
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return Hex.encodeHexString(digest.digest()).equalsIgnoreCase(entry.getChecksum());
+    }
+
+    private static MessageDigest digestFor(String checksumType) {
+        MessageDigest digest = VerifyingInputStream.digestFor(checksumType);
+        if (digest == null) {
+            throw new UnsupportedMetadataException(format("Unsupported checksum type '%s'.", checksumType));
+        }
+        return digest;
+    }
+
+    private static File previousGeneration(File directory) {
+        File[] candidates = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        File newest = null;
+        for (File candidate : candidates == null ? new File[0] : candidates) {
+            if (newest == null || candidate.lastModified() > newest.lastModified()) {
+                newest = candidate;
+            }
+        }
+        return newest;
+    }
+
+    private static void deleteOtherGenerations(File directory, File current) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        for (File file : files == null ? new File[0] : files) {
+            if (!file.equals(current) && !file.delete()) {
+                LOGGER.warn(format("Could not delete stale zchunk metadata %s", file));
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * Lead, preface and index of a zchunk file. The index lists the compressed chunks that follow the header, the first
+ * one being the compression dictionary.
+ */
+class ZchunkHeader {
+    static final int COMPRESSION_NONE = 0;
+    static final int COMPRESSION_ZSTD = 2;
+    private static final byte[] MAGIC = {0, 'Z', 'C', 'K', '1'};
+    private static final int FLAG_STREAMS = 1;
+    private static final int FLAG_OPTIONAL_ELEMENTS = 2;
+    private static final int FLAG_UNCOMPRESSED_CHECKSUMS = 4;
+
+    private final long length;
+    private final int compressionType;
+    private final int chunkChecksumType;
+    private final List<Chunk> chunks;
+
+    private ZchunkHeader(long length, int compressionType, int chunkChecksumType, List<Chunk> chunks) {
+        this.length = length;
+        this.compressionType = compressionType;
+        this.chunkChecksumType = chunkChecksumType;
+        this.chunks = chunks;
+    }
+
+    /**
+     * The length of lead and header together, read from the lead at the start of the given bytes.
+     */
+    static long lengthOf(byte[] start) throws IOException {
+        Reader reader = new Reader(new ByteArrayInputStream(start));
+        return reader.readLead();
+    }
+
+    /**
+     * Reads exactly the lead and header from the stream, leaving it at the start of the dictionary.
+     */
+    static ZchunkHeader read(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        long length = reader.readLead();
+        reader.skip(checksumLength(reader.checksumType));
+        long flags = reader.readInt();
+        int compressionType = (int) reader.readInt();
+        if ((flags & FLAG_OPTIONAL_ELEMENTS) != 0) {
+            for (long i = reader.readInt(); i > 0; i--) {
+                reader.readInt();
+                reader.skip(reader.readInt());
+            }
+        }
+        reader.readInt();
+        int chunkChecksumType = (int) reader.readInt();
+        int checksumLength = checksumLength(chunkChecksumType);
+        long count = reader.readInt();
+        List<Chunk> chunks = new ArrayList<>();
+        long offset = length;
+        for (long i = 0; i < count; i++) {
+            if ((flags & FLAG_STREAMS) != 0) {
+                reader.readInt();
+            }
+            byte[] checksum = reader.readBytes(checksumLength);
+            if ((flags & FLAG_UNCOMPRESSED_CHECKSUMS) != 0) {
+                reader.skip(checksumLength);
+            }
+            long chunkLength = reader.readInt();
+            long uncompressedLength = reader.readInt();
+            chunks.add(new Chunk(Hex.encodeHexString(checksum), offset, chunkLength, uncompressedLength));
+            offset += chunkLength;
+        }
+        if (reader.position > length) {
+            throw new IOException("Index of zchunk file exceeds its header");
+        }
+        // signatures
+        reader.skip(length - reader.position);
+        return new ZchunkHeader(length, compressionType, chunkChecksumType, Collections.unmodifiableList(chunks));
+    }
+
+    private static int checksumLength(long type) {
+        switch ((int) type) {
+            case 0:
+                return 20;
+            case 1:
+                return 32;
+            case 2:
+                return 64;
+            case 3:
+                return 16;
+            default:
+                throw new UnsupportedMetadataException(format("Unsupported zchunk checksum type %d.", type));
+        }
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    long getFileLength() {
+        return chunks.isEmpty() ? length : chunks.get(chunks.size() - 1).getEnd();
+    }
+
+    int getCompressionType() {
+        return compressionType;
+    }
+
+    int getChunkChecksumType() {
+        return chunkChecksumType;
+    }
+
+    Chunk getDictionary() {
+        return chunks.isEmpty() ? null : chunks.get(0);
+    }
+
+    List<Chunk> getChunks() {
+        return chunks;
+    }
+
+    static class Chunk {
+        private final String checksum;
+        private final long offset;
+        private final long length;
+        private final long uncompressedLength;
+
+        Chunk(String checksum, long offset, long length, long uncompressedLength) {
+            this.checksum = checksum;
+            this.offset = offset;
+            this.length = length;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        String getChecksum() {
+            return checksum;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLength() {
+            return length;
+        }
+
+        long getEnd() {
+            return offset + length;
+        }
+
+        long getUncompressedLength() {
+            return uncompressedLength;
+        }
+    }
+
+    private static class Reader {
+        private final InputStream in;
+        private long position;
+        private long checksumType;
+
+        Reader(InputStream in) {
+            this.in = in;
+        }
+
+        long readLead() throws IOException {
+            if (!Arrays.equals(MAGIC, readBytes(MAGIC.length))) {
+                throw new UnsupportedMetadataException("Not a zchunk file.");
+            }
+            checksumType = readInt();
+            long headerSize = readInt();
+            skip(checksumLength(checksumType));
+            return position + headerSize;
+        }
+
+        // little-endian groups of seven bits, the last byte has the high bit set
+        long readInt() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) != 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed integer in zchunk header");
+        }
+
+        byte[] readBytes(int count) throws IOException {
+            byte[] bytes = new byte[count];
+            for (int i = 0; i < count; i++) {
+                bytes[i] = (byte) readByte();
+            }
+            return bytes;
+        }
+
+        void skip(long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                readByte();
+            }
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated zchunk header");
+            }
+            position++;
+            return b;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import static java.lang.String.format;
+
+/**
+ * The uncompressed content of a zchunk file: every chunk after the dictionary, decompressed one at a time.
+ */
+class ZchunkInputStream extends InputStream {
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
+
+    private final DataInputStream in;
+    private final int compressionType;
+    private final Iterator<ZchunkHeader.Chunk> chunks;
+    private ZstdDictDecompress dictionary;
+    private byte[] buffer = new byte[0];
+    private int position;
+
+    ZchunkInputStream(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        ZchunkHeader header = ZchunkHeader.read(this.in);
+        compressionType = header.getCompressionType();
+        if (compressionType != ZchunkHeader.COMPRESSION_NONE && compressionType != ZchunkHeader.COMPRESSION_ZSTD) {
+            throw new UnsupportedMetadataException(format("Unsupported zchunk compression type %d.", compressionType));
+        }
+        chunks = header.getChunks().iterator();
+        if (chunks.hasNext()) {
+            ZchunkHeader.Chunk dictionaryChunk = chunks.next();
+            byte[] compressed = readChunk(dictionaryChunk);
+            if (compressionType == ZchunkHeader.COMPRESSION_ZSTD && compressed.length > 0) {
+                dictionary = new ZstdDictDecompress(Zstd.decompress(compressed, size(dictionaryChunk.getUncompressedLength())));
+            }
+        }
+        // decompressing the first chunk right away surfaces a missing zstd library to whoever opens the stream
+        nextChunk();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureBuffered()) {
+            return -1;
+        }
+        int count = Math.min(len, buffer.length - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private boolean ensureBuffered() throws IOException {
+        while (position == buffer.length) {
+            if (!nextChunk()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (!chunks.hasNext()) {
+            return false;
+        }
+        ZchunkHeader.Chunk chunk = chunks.next();
+        byte[] compressed = readChunk(chunk);
+        if (compressionType == ZchunkHeader.COMPRESSION_NONE || compressed.length == 0) {
+            buffer = compressed;
+        } else {
+            int uncompressedLength = size(chunk.getUncompressedLength());
+            buffer = dictionary == null ? Zstd.decompress(compressed, uncompressedLength) : Zstd.decompress(compressed, dictionary, uncompressedLength);
+        }
+        position = 0;
+        return true;
+    }
+
+    private byte[] readChunk(ZchunkHeader.Chunk chunk) throws IOException {
+        byte[] compressed = new byte[size(chunk.getLength())];
+        in.readFully(compressed);
+        return compressed;
+    }
+
+    private static int size(long length) throws IOException {
+        if (length > MAX_CHUNK_SIZE) {
+            throw new IOException(format("zchunk chunk of %d bytes is too large", length));
+        }
+        return (int) length;
+    }
+}
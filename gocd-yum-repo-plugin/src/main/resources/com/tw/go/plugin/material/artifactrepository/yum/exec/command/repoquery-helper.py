@@ -0,0 +1,216 @@
+#
+# Copyright 2022 ThoughtWorks, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Long-lived repoquery for the GoCD yum plugin. Reads one request per line on stdin and answers on stdout, keeping
+# the dnf (or yum) session and loaded repository metadata between requests. Request fields are separated by tabs,
+# since the query format itself contains <=>, the delimiter of the answers.
+#
+#   PING                                          -> PONG<=><backend>
+#   QUERY repoid url cachedir dups qf rev spec... -> one line per package, formatted with qf
+#
+# rev identifies the repomd.xml the plugin fetched for the poll; a loaded session is reused while it is unchanged.
+# When it is empty the helper checks repomd.xml itself. At most max_sessions (the first argument, 8 by default)
+# sessions are kept, the least recently used one is closed to make room for another.
+#
+# Every answer ends with a line "<=>DONE<=>0", or "<=>DONE<=>1<=>message" when the request failed.
+
+import hashlib
+import os
+import re
+import sys
+from collections import OrderedDict
+
+DELIMITER = "<=>"
+TAG = re.compile(r"%\{(\w+)\}")
+DEFAULT_MAX_SESSIONS = 8
+
+
+def read_url(url):
+    try:
+        from urllib.request import HTTPBasicAuthHandler, HTTPPasswordMgrWithDefaultRealm, build_opener
+        from urllib.parse import urlsplit, urlunsplit, unquote
+    except ImportError:
+        from urllib2 import HTTPBasicAuthHandler, HTTPPasswordMgrWithDefaultRealm, build_opener
+        from urlparse import urlsplit, urlunsplit
+        from urllib import unquote
+    parts = urlsplit(url)
+    if parts.scheme == "file":
+        with open(unquote(parts.path), "rb") as repomd:
+            return repomd.read()
+    handlers = []
+    netloc = parts.netloc
+    if "@" in netloc:
+        userinfo, netloc = netloc.rsplit("@", 1)
+        username, _, password = userinfo.partition(":")
+        passwords = HTTPPasswordMgrWithDefaultRealm()
+        passwords.add_password(None, parts.scheme + "://" + netloc, unquote(username), unquote(password))
+        handlers.append(HTTPBasicAuthHandler(passwords))
+    response = build_opener(*handlers).open(urlunsplit((parts.scheme, netloc, parts.path, parts.query, "")), timeout=60)
+    try:
+        return response.read()
+    finally:
+        response.close()
+
+
+def repomd_digest(url):
+    return hashlib.sha256(read_url(url.rstrip("/") + "/repodata/repomd.xml")).hexdigest()
+
+
+class Sessions(object):
+    """Keeps loaded sessions of the most recently used repositories and reloads one only when repomd.xml changes."""
+
+    def __init__(self, backend, max_sessions):
+        self.backend = backend
+        self.max_sessions = max(1, max_sessions)
+        self.sessions = OrderedDict()
+
+    def get(self, repoid, url, cachedir, revision):
+        revision = revision or repomd_digest(url)
+        key = (repoid, url)
+        cached = self.sessions.pop(key, None)
+        if cached is not None and cached[0] != revision:
+            self.backend.close(cached[1])
+            cached = None
+        if cached is None:
+            while len(self.sessions) >= self.max_sessions:
+                self.backend.close(self.sessions.popitem(last=False)[1][1])
+            cached = (revision, self.backend.load(repoid, url, cachedir))
+        self.sessions[key] = cached
+        return cached[1]
+
+
+class DnfBackend(object):
+    name = "dnf"
+
+    def __init__(self):
+        import dnf
+        import dnf.subject
+        self.dnf = dnf
+
+    def load(self, repoid, url, cachedir):
+        base = self.dnf.Base()
+        base.conf.cachedir = os.path.join(cachedir, "dnf")
+        base.conf.reposdir = []
+        base.conf.metadata_expire = 0
+        repo = base.repos.add_new_repo(repoid, base.conf, baseurl=[url])
+        repo.metadata_expire = 0
+        base.fill_sack(load_system_repo=False, load_available_repos=True)
+        return base
+
+    def close(self, base):
+        base.close()
+
+    def query(self, base, specs, duplicates):
+        result = base.sack.query().filterm(empty=True)
+        for spec in specs:
+            subject = self.dnf.subject.Subject(spec)
+            result = result.union(subject.get_best_query(base.sack, with_provides=False, with_filenames=False))
+        result = result.available()
+        if not duplicates:
+            result = result.latest()
+        return sorted(result)
+
+    def value(self, pkg, tag):
+        if tag == "RELATIVEPATH":
+            return pkg.location
+        if tag == "LOCATION":
+            return pkg.remote_location()
+        if tag == "BUILDTIME":
+            return pkg.buildtime
+        return getattr(pkg, tag.lower(), None)
+
+
+class YumBackend(object):
+    name = "yum"
+
+    def __init__(self):
+        import yum
+        self.yum = yum
+
+    def load(self, repoid, url, cachedir):
+        base = self.yum.YumBase()
+        base.preconf.init_plugins = False
+        base.preconf.debuglevel = 0
+        base.preconf.errorlevel = 0
+        base.setCacheDir(force=True, reuse=False, tmpdir=cachedir)
+        base.repos.disableRepo("*")
+        repo = base.add_enable_repo(repoid, baseurls=[url])
+        repo.metadata_expire = 0
+        base.doSackSetup(thisrepo=repoid)
+        return base
+
+    def close(self, base):
+        base.close()
+
+    def query(self, base, specs, duplicates):
+        if duplicates:
+            return base.pkgSack.returnPackages(patterns=specs)
+        return base.pkgSack.returnNewestByNameArch(patterns=specs)
+
+    def value(self, pkg, tag):
+        if tag == "LOCATION":
+            return pkg.remote_url
+        return getattr(pkg, tag.lower(), None)
+
+
+def load_backend():
+    try:
+        return DnfBackend()
+    except ImportError:
+        return YumBackend()
+
+
+def render(backend, qf, pkg):
+    def substitute(match):
+        value = backend.value(pkg, match.group(1))
+        return "None" if value is None or value == "" else str(value)
+    return TAG.sub(substitute, qf)
+
+
+def answer(lines, error=None):
+    for line in lines:
+        sys.stdout.write(line.replace("\n", " ") + "\n")
+    if error is None:
+        sys.stdout.write(DELIMITER + "DONE" + DELIMITER + "0\n")
+    else:
+        sys.stdout.write(DELIMITER + "DONE" + DELIMITER + "1" + DELIMITER + str(error).replace("\n", " ") + "\n")
+    sys.stdout.flush()
+
+
+def main():
+    backend = load_backend()
+    sessions = Sessions(backend, int(sys.argv[1]) if len(sys.argv) > 1 else DEFAULT_MAX_SESSIONS)
+    while True:
+        request = sys.stdin.readline()
+        if not request:
+            return
+        fields = request.rstrip("\n").split("\t")
+        try:
+            if fields[0] == "PING":
+                answer(["PONG" + DELIMITER + backend.name])
+            elif fields[0] == "QUERY":
+                repoid, url, cachedir, duplicates, qf, revision = fields[1:7]
+                session = sessions.get(repoid, url, cachedir, revision)
+                packages = backend.query(session, fields[7:], duplicates == "1")
+                answer([render(backend, qf, pkg) for pkg in packages])
+            else:
+                answer([], "Unknown request " + fields[0])
+        except Exception as e:
+            answer([], e)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheJanitorTest {
+    @TempDir
+    File tmpdir;
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedDirectoriesUntilWithinQuota() throws IOException {
+        File oldest = cacheDirectory("go-yum-plugin-oldest", 100, 1000);
+        File older = cacheDirectory("go-yum-plugin-older", 100, 2000);
+        File recent = cacheDirectory("go-yum-plugin-recent", 100, 3000);
+        CacheJanitor janitor = new CacheJanitor(() -> tmpdir, 150);
+
+        janitor.run();
+
+        assertFalse(oldest.exists());
+        assertFalse(older.exists());
+        assertTrue(recent.exists());
+        assertEquals(100, janitor.getUsageBytes());
+        assertEquals(2, janitor.getEvictions());
+        assertEquals(200, janitor.getBytesEvicted());
+        assertEquals(1, janitor.getDirectories());
+    }
+
+    @Test
+    public void shouldNotEvictDirectoriesInUse() throws IOException {
+        File oldest = cacheDirectory("go-yum-plugin-oldest", 100, 1000);
+        File recent = cacheDirectory("go-yum-plugin-recent", 100, 3000);
+        CacheJanitor janitor = new CacheJanitor(() -> tmpdir, 150);
+
+        try (CacheJanitor.Lease ignored = janitor.use(oldest)) {
+            oldest.setLastModified(1000);
+            janitor.run();
+        }
+
+        assertTrue(oldest.exists());
+        assertFalse(recent.exists());
+        assertEquals(1, janitor.getEvictionsSkipped());
+    }
+
+    @Test
+    public void shouldMarkDirectoriesAsUsedWhenLeased() throws IOException {
+        File first = cacheDirectory("go-yum-plugin-first", 100, 1000);
+        File second = cacheDirectory("go-yum-plugin-second", 100, 2000);
+        CacheJanitor janitor = new CacheJanitor(() -> tmpdir, 150);
+
+        janitor.use(first).close();
+        janitor.run();
+
+        assertTrue(first.exists());
+        assertFalse(second.exists());
+    }
+
+    @Test
+    public void shouldCountHardLinkedFilesOnceAndKeepTheHelperDirectory() throws IOException {
+        File helper = cacheDirectory("go-yum-plugin-helper", 100, 1000);
+        File store = new File(tmpdir, "go-yum-plugin-metadata");
+        File object = new File(store, "objects/ab/abcd.sqlite");
+        assertTrue(object.getParentFile().mkdirs());
+        Files.write(object.toPath(), new byte[300]);
+        File first = new File(store, "repos/first");
+        File second = new File(store, "repos/second");
+        assertTrue(first.mkdirs());
+        assertTrue(second.mkdirs());
+        Files.createLink(new File(first, "primary.sqlite").toPath(), object.toPath());
+        Files.createLink(new File(second, "primary.sqlite").toPath(), object.toPath());
+        first.setLastModified(2000);
+        second.setLastModified(3000);
+        CacheJanitor janitor = new CacheJanitor(() -> tmpdir, 500);
+
+        janitor.run();
+
+        assertEquals(400, janitor.getUsageBytes());
+        assertTrue(helper.exists());
+
+        janitor = new CacheJanitor(() -> tmpdir, 200);
+        janitor.run();
+
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+        assertFalse(object.exists());
+        assertTrue(helper.exists());
+        assertEquals(100, janitor.getUsageBytes());
+        assertEquals(300, janitor.getBytesEvicted());
+    }
+
+    private File cacheDirectory(String name, int size, long lastUsed) throws IOException {
+        File directory = new File(tmpdir, name);
+        assertTrue(directory.mkdirs());
+        Files.write(new File(directory, "primary.xml").toPath(), new byte[size]);
+        assertTrue(directory.setLastModified(lastUsed));
+        return directory;
+    }
+}
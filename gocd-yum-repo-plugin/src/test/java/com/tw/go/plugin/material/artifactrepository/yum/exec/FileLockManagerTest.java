@@ -0,0 +1,91 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.FileLockManager.Lease;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.Mode.READ;
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.Mode.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileLockManagerTest {
+    @TempDir
+    File tempDir;
+    private final FileLockManager locks = new FileLockManager(200, TimeUnit.MINUTES.toMillis(30));
+
+    @Test
+    public void shouldLetReadersShareALockAndRecordTheWriter() throws Exception {
+        File lockFile = new File(tempDir, "repos/abc/primary_db.lock");
+        try (Lease first = locks.acquire(lockFile, READ); Lease second = locks.tryAcquire(lockFile, READ, 0, TimeUnit.MILLISECONDS)) {
+            assertNotNull(second);
+            assertEquals(2, locks.getStats("primary_db.lock").getHolders());
+            assertNull(locks.tryAcquire(lockFile, WRITE, 10, TimeUnit.MILLISECONDS));
+        }
+        try (Lease ignored = locks.acquire(lockFile, WRITE)) {
+            String owner = new String(Files.readAllBytes(lockFile.toPath()), StandardCharsets.UTF_8);
+            assertTrue(owner.startsWith(ProcessHandle.current().pid() + " "), owner);
+        }
+        assertEquals(0, lockFile.length());
+        assertEquals(0, locks.getStats("primary_db.lock").getHolders());
+        assertEquals(1, locks.getStats("primary_db.lock").getTimeouts());
+    }
+
+    @Test
+    public void shouldWaitForALockHeldByAnotherProcess() throws Exception {
+        File lockFile = new File(tempDir, "repomd.lock");
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(("1 otherhost " + System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8)));
+            FileLock held = channel.lock();
+
+            assertNull(locks.tryAcquire(lockFile, READ, 100, TimeUnit.MILLISECONDS));
+
+            held.release();
+            try (Lease lease = locks.tryAcquire(lockFile, READ, 100, TimeUnit.MILLISECONDS)) {
+                assertNotNull(lease);
+            }
+        }
+        assertEquals(0, locks.getStaleLocksBroken());
+        assertTrue(locks.getStats("repomd.lock").getMaxWaitMillis() >= 100);
+    }
+
+    @Test
+    public void shouldBreakAStaleLock() throws IOException {
+        File lockFile = new File(tempDir, "repomd.lock");
+        try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("1 otherhost 0".getBytes(StandardCharsets.UTF_8)));
+            channel.lock();
+
+            FileLockManager patient = new FileLockManager(TimeUnit.SECONDS.toMillis(5), TimeUnit.MINUTES.toMillis(30));
+            try (Lease ignored = patient.acquire(lockFile, WRITE)) {
+                assertEquals(1, patient.getStaleLocksBroken());
+            }
+        }
+    }
+}
@@ -24,6 +24,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class HttpConnectionCheckerTest {
@@ -34,7 +38,7 @@ public class HttpConnectionCheckerTest {
     @BeforeEach
     public void setUp() {
         webServer = new MockWebServer();
-        checker = new HttpConnectionChecker();
+        checker = new HttpConnectionChecker(new PooledHttpTransport(), 0);
     }
 
     @AfterEach
@@ -88,6 +92,41 @@ public class HttpConnectionCheckerTest {
         assertEquals(1, webServer.getRequestCount());
     }
 
+    @Test
+    public void shouldSendValidatorsOfPreviousResponseWithConditionalFetch() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "\"v1\"").setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT").setBody("repomd"));
+        webServer.enqueue(new MockResponse().setResponseCode(304));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+
+        ConditionalResponse<String> first = checker.fetchIfModified(url.toString(), new Credentials(null, null), CacheValidators.NONE, stream -> new String(stream.readAllBytes()));
+        assertTrue(first.isModified());
+        assertEquals("repomd", first.getBody());
+        assertEquals(new CacheValidators("\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT"), first.getValidators());
+
+        ConditionalResponse<String> second = checker.fetchIfModified(url.toString(), new Credentials(null, null), first.getValidators(), stream -> new String(stream.readAllBytes()));
+        assertFalse(second.isModified());
+        assertNull(second.getBody());
+        assertEquals(first.getValidators(), second.getValidators());
+
+        assertNull(webServer.takeRequest().getHeader("If-None-Match"));
+        RecordedRequest conditionalRequest = webServer.takeRequest();
+        assertEquals("\"v1\"", conditionalRequest.getHeader("If-None-Match"));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", conditionalRequest.getHeader("If-Modified-Since"));
+    }
+
+    @Test
+    public void shouldFailConditionalFetchWhenServerReturnsAnUnSuccessfulReturnCode() {
+        webServer.enqueue(new MockResponse().setResponseCode(404));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+
+        try {
+            checker.fetchIfModified(url.toString(), new Credentials(null, null), new CacheValidators("\"v1\"", null), stream -> null);
+            fail("should fail");
+        } catch (Exception e) {
+            assertEquals("HTTP/1.1 404 Client Error", e.getMessage());
+        }
+    }
+
     @Test
     public void shouldFailCheckConnectionToTheRepoWhenHttpClientThrowsIOException() {
         try {
@@ -97,4 +136,212 @@ public class HttpConnectionCheckerTest {
             assertTrue(e.getMessage().contains("Connection refused"));
         }
     }
+
+    @Test
+    public void shouldProbeTheRepositoryWithAHeadRequest() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+
+        checker.checkConnection(webServer.url("/repodata/repomd.xml").toString(), new Credentials(null, null));
+
+        RecordedRequest recordedRequest = webServer.takeRequest();
+        assertEquals("HEAD", recordedRequest.getMethod());
+        assertNull(recordedRequest.getHeader("Range"));
+    }
+
+    @Test
+    public void shouldFallBackToARangedGetWhenHeadIsRejected() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(405));
+        webServer.enqueue(new MockResponse().setResponseCode(206).setHeader("Content-Range", "bytes 0-0/4096").setBody("<"));
+
+        checker.checkConnection(webServer.url("/repodata/repomd.xml").toString(), new Credentials(null, null));
+
+        assertEquals("HEAD", webServer.takeRequest().getMethod());
+        RecordedRequest rangedRequest = webServer.takeRequest();
+        assertEquals("GET", rangedRequest.getMethod());
+        assertEquals("bytes=0-0", rangedRequest.getHeader("Range"));
+    }
+
+    @Test
+    public void shouldRememberASuccessfulProbeForAShortWhile() {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        webServer.enqueue(new MockResponse().setResponseCode(404));
+        HttpConnectionChecker caching = new HttpConnectionChecker(new PooledHttpTransport(), 60 * 1000);
+        String url = webServer.url("/repodata/repomd.xml").toString();
+
+        caching.checkConnection(url, new Credentials(null, null));
+        caching.checkConnection(url, new Credentials(null, null));
+        assertEquals(1, webServer.getRequestCount());
+
+        try {
+            caching.checkConnection(url, new Credentials("foo", "bar"));
+            fail("should fail");
+        } catch (Exception e) {
+            assertEquals("HTTP/1.1 404 Client Error", e.getMessage());
+        }
+        assertEquals(2, webServer.getRequestCount());
+    }
+
+    @Test
+    public void shouldProbeAgainAfterAFailedProbe() {
+        webServer.enqueue(new MockResponse().setResponseCode(404));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        HttpConnectionChecker caching = new HttpConnectionChecker(new PooledHttpTransport(), 60 * 1000);
+        String url = webServer.url("/repodata/repomd.xml").toString();
+
+        assertThrows(RuntimeException.class, () -> caching.checkConnection(url, new Credentials(null, null)));
+        caching.checkConnection(url, new Credentials(null, null));
+
+        assertEquals(2, webServer.getRequestCount());
+    }
+
+    @Test
+    public void shouldSendBasicCredentialsPreemptivelyOnceTheHostAskedForThem() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(401).setHeader("WWW-Authenticate", "Basic realm=\"YumRepo\""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("repomd"));
+
+        checker.checkConnection(webServer.url("/repodata/repomd.xml").toString(), new Credentials("foo", "bar"));
+        String body = checker.fetch(webServer.url("/repodata/primary.xml").toString(), new Credentials("foo", "bar"), stream -> new String(stream.readAllBytes()));
+
+        assertEquals("repomd", body);
+        assertEquals(3, webServer.getRequestCount());
+        webServer.takeRequest();
+        webServer.takeRequest();
+        RecordedRequest preemptive = webServer.takeRequest();
+        assertEquals("/repodata/primary.xml", preemptive.getPath());
+        assertEquals("Basic Zm9vOmJhcg==", preemptive.getHeader("Authorization"));
+    }
+
+    @Test
+    public void shouldReuseTheBearerTokenOfTheRealmUntilItExpires() throws Exception {
+        HttpUrl realm = webServer.url("/token");
+        webServer.enqueue(new MockResponse().setResponseCode(401).setHeader("WWW-Authenticate", "Bearer realm=\"" + realm + "\",service=\"yum\",scope=\"repo:pull\""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("{\"token\": \"abc\", \"expires_in\": 300}"));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+
+        checker.checkConnection(url.toString(), new Credentials("foo", "bar"));
+        checker.checkConnection(url.toString(), new Credentials("foo", "bar"));
+
+        assertEquals(4, webServer.getRequestCount());
+        assertNull(webServer.takeRequest().getHeader("Authorization"));
+        RecordedRequest tokenRequest = webServer.takeRequest();
+        assertEquals("/token?service=yum&scope=repo%3Apull", tokenRequest.getPath());
+        assertEquals("Basic Zm9vOmJhcg==", tokenRequest.getHeader("Authorization"));
+        assertEquals("Bearer abc", webServer.takeRequest().getHeader("Authorization"));
+        assertEquals("Bearer abc", webServer.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void shouldRequestANewBearerTokenOnceTheOldOneExpired() throws Exception {
+        HttpUrl realm = webServer.url("/token");
+        webServer.enqueue(new MockResponse().setResponseCode(401).setHeader("WWW-Authenticate", "Bearer realm=\"" + realm + "\""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("{\"token\": \"abc\", \"expires_in\": 0}"));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("{\"access_token\": \"def\", \"expires_in\": 0}"));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+
+        checker.checkConnection(url.toString(), new Credentials("foo", "bar"));
+        checker.checkConnection(url.toString(), new Credentials("foo", "bar"));
+
+        assertEquals(5, webServer.getRequestCount());
+        webServer.takeRequest();
+        webServer.takeRequest();
+        assertEquals("Bearer abc", webServer.takeRequest().getHeader("Authorization"));
+        assertEquals("/token", webServer.takeRequest().getPath());
+        assertEquals("Bearer def", webServer.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void shouldFollowRedirects() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(302).setHeader("Location", "/mirror/repodata/repomd.xml"));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("repomd"));
+
+        String body = checker.fetch(webServer.url("/repodata/repomd.xml").toString(), new Credentials(null, null), stream -> new String(stream.readAllBytes()));
+
+        assertEquals("repomd", body);
+        webServer.takeRequest();
+        assertEquals("/mirror/repodata/repomd.xml", webServer.takeRequest().getPath());
+    }
+
+    @Test
+    public void shouldReuseThePooledConnectionAcrossChecks() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+        HttpConnectionChecker pooled = new HttpConnectionChecker(new PooledHttpTransport(2, 1, 30), 0);
+
+        pooled.checkConnection(url.toString(), new Credentials(null, null));
+        pooled.checkConnection(url.toString(), new Credentials("foo", "bar"));
+
+        assertEquals(0, webServer.takeRequest().getSequenceNumber());
+        assertEquals(1, webServer.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void shouldPerformBasicAuthUsingChallengeResponseAuthOverTheHttp2Client() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(401).setHeader("WWW-Authenticate", "Basic realm=\"YumRepo\""));
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody(""));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+
+        new HttpConnectionChecker(new Http2Transport()).checkConnection(url.toString(), new Credentials("foo", "bar"));
+
+        assertNull(webServer.takeRequest().getHeader("Authorization"));
+        assertEquals("Basic Zm9vOmJhcg==", webServer.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void shouldFetchAndReuseTheConnectionOverTheHttp2Client() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("repomd"));
+        webServer.enqueue(new MockResponse().setResponseCode(500));
+        HttpUrl url = webServer.url("/repodata/repomd.xml");
+        HttpConnectionChecker http2 = new HttpConnectionChecker(new Http2Transport());
+
+        assertEquals("repomd", http2.fetch(url.toString(), new Credentials(null, null), stream -> new String(stream.readAllBytes())));
+        try {
+            http2.checkConnection(url.toString(), new Credentials(null, null));
+            fail("should fail");
+        } catch (Exception e) {
+            assertEquals("HTTP/1.1 500", e.getMessage());
+        }
+
+        assertEquals(0, webServer.takeRequest().getSequenceNumber());
+        assertEquals(1, webServer.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void shouldRejectAnUnknownHttpClient() {
+        assertThrows(IllegalArgumentException.class, () -> HttpTransport.forName("curl"));
+    }
+
+    @Test
+    public void shouldHandOverEveryPartOfAMultipartRangeResponse() throws Exception {
+        webServer.enqueue(new MockResponse().setResponseCode(206).setHeader("Content-Type", "multipart/byteranges; boundary=THIS_STRING_SEPARATES").setBody(
+                "\r\n--THIS_STRING_SEPARATES\r\nContent-Type: application/octet-stream\r\nContent-Range: bytes 2-4/20\r\n\r\ncde" +
+                        "\r\n--THIS_STRING_SEPARATES\r\nContent-Range: bytes 10-11/20\r\n\r\nkl" +
+                        "\r\n--THIS_STRING_SEPARATES--\r\n"));
+        Map<ByteRange, String> parts = new LinkedHashMap<>();
+
+        boolean served = checker.fetchRanges(webServer.url("/repodata/primary.xml.zck").toString(), new Credentials(null, null),
+                Arrays.asList(new ByteRange(2, 4), new ByteRange(10, 11)), (range, part) -> parts.put(range, new String(part.readAllBytes())));
+
+        assertTrue(served);
+        assertEquals("bytes=2-4,10-11", webServer.takeRequest().getHeader("Range"));
+        Map<ByteRange, String> expected = new LinkedHashMap<>();
+        expected.put(new ByteRange(2, 4), "cde");
+        expected.put(new ByteRange(10, 11), "kl");
+        assertEquals(expected, parts);
+    }
+
+    @Test
+    public void shouldReportThatRangesAreNotServedWhenTheServerSendsTheWholeFile() {
+        webServer.enqueue(new MockResponse().setResponseCode(200).setBody("the whole file"));
+
+        boolean served = checker.fetchRanges(webServer.url("/repodata/primary.xml.zck").toString(), new Credentials(null, null),
+                Arrays.asList(new ByteRange(2, 4), new ByteRange(10, 11)), (range, part) -> fail("should not consume"));
+
+        assertFalse(served);
+    }
 }
@@ -15,6 +15,8 @@
  */
 package com.tw.go.plugin.material.artifactrepository.yum.exec;
 
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.PackageQueryEngine;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.CheckConnectionResultMessage;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageMaterialProperties;
 import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageMaterialProperty;
@@ -25,7 +27,16 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.spy;
@@ -62,6 +73,108 @@ public class PackageRepositoryPollerTest {
         assertPackageLocationData("/go-agent-13.1.1-16714.noarch.rpm", latestRevision);
     }
 
+    @Test
+    public void shouldReusePreviouslyResolvedRevisionWhileRepositoryMetadataIsUnchanged_getLatestRevision() {
+        AtomicInteger queries = new AtomicInteger();
+        PackageRevisionMessage resolved = new PackageRevisionMessage("go-agent-13.1.1-16714.noarch", new Date(fromEpochTime(1365054258L)), null, null, null);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> {
+            queries.incrementAndGet();
+            return resolved;
+        });
+
+        assertSame(resolved, poller.getLatestRevision(packageConfiguration, repositoryConfiguration));
+        assertSame(resolved, poller.getLatestRevision(packageConfiguration, repositoryConfiguration));
+        assertEquals(1, queries.get());
+
+        PackageMaterialProperties otherPackage = new PackageMaterialProperties();
+        otherPackage.addPackageMaterialProperty(Constants.PACKAGE_SPEC, new PackageMaterialProperty().withValue("php"));
+        poller.getLatestRevision(otherPackage, repositoryConfiguration);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public void shouldHandTheMetadataFetchedForThePollToTheQueryEngine_getLatestRevision() {
+        List<RepoQueryParams> queries = new ArrayList<>();
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> {
+            queries.add(params);
+            return new PackageRevisionMessage("go-agent-13.1.1-16714.noarch", new Date(fromEpochTime(1365054258L)), null, null, null);
+        });
+
+        poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+
+        assertEquals(1, queries.size());
+        assertNotNull(queries.get(0).getMetadata());
+        assertEquals("primary:" + queries.get(0).getMetadata().getMetadata().getPrimary().getChecksum(), queries.get(0).getMetadata().getMetadata().getPrimaryVersion());
+    }
+
+    @Test
+    public void shouldNotFetchMetadataForEnginesThatDoNotReadIt_getLatestRevision() throws IOException {
+        List<RepoQueryParams> queries = new ArrayList<>();
+        PackageRevisionMessage resolved = new PackageRevisionMessage("go-agent-13.1.1-16714.noarch", new Date(fromEpochTime(1365054258L)), null, null, null);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), new PackageQueryEngine() {
+            @Override
+            public PackageRevisionMessage query(RepoQueryParams params) {
+                queries.add(params);
+                return resolved;
+            }
+
+            @Override
+            public boolean readsRepositoryMetadata() {
+                return false;
+            }
+        });
+        // no repodata, so fetching repomd.xml in-process would fail
+        File emptyRepository = Files.createTempDirectory("empty-repo").toFile();
+        PackageMaterialProperties emptyRepositoryConfiguration = new PackageMaterialProperties();
+        emptyRepositoryConfiguration.addPackageMaterialProperty(Constants.REPO_URL, new PackageMaterialProperty().withValue("file://" + emptyRepository.getAbsolutePath()));
+
+        assertSame(resolved, poller.getLatestRevision(packageConfiguration, emptyRepositoryConfiguration));
+        assertEquals(1, queries.size());
+        assertNull(queries.get(0).getMetadata());
+        emptyRepository.delete();
+    }
+
+    @Test
+    public void shouldAnswerConcurrentIdenticalRequestsWithOneQuery_getLatestRevision() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PackageRevisionMessage resolved = new PackageRevisionMessage("go-agent-13.1.1-16714.noarch", new Date(fromEpochTime(1365054258L)), null, null, null);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> {
+            queries.incrementAndGet();
+            await(release);
+            return resolved;
+        });
+
+        List<Future<Object>> requests = requestConcurrently(4);
+        waitForCoalescedRequests(3);
+        release.countDown();
+
+        for (Future<Object> request : requests) {
+            assertSame(resolved, request.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, queries.get());
+    }
+
+    @Test
+    public void shouldShareTheFailureOfAnInFlightRequestWithItsWaiters_getLatestRevision() throws Exception {
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> {
+            queries.incrementAndGet();
+            await(release);
+            throw new RuntimeException("repository unavailable");
+        });
+
+        List<Future<Object>> requests = requestConcurrently(3);
+        waitForCoalescedRequests(2);
+        release.countDown();
+
+        for (Future<Object> request : requests) {
+            assertEquals("repository unavailable", ((RuntimeException) request.get(10, TimeUnit.SECONDS)).getMessage());
+        }
+        assertEquals(1, queries.get());
+    }
+
     @Test
     public void shouldThrowExceptionWhileGettingLatestRevisionIfCheckConnectionFails_getLatestRevision() {
         repositoryConfiguration = new PackageMaterialProperties();
@@ -186,6 +299,30 @@ public class PackageRepositoryPollerTest {
         assertNull(latestRevision);
     }
 
+    @Test
+    public void shouldOrderRevisionsOfTheSamePackageByEvrRatherThanBuildTime() {
+        PackageRevisionMessage newerVersionBuiltEarlier = new PackageRevisionMessage("go-agent-13.10.0-1.noarch", new Date(fromEpochTime(1000L)), null, null, null);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> newerVersionBuiltEarlier);
+
+        PackageRevisionMessage previous = new PackageRevisionMessage("go-agent-13.9.0-1.noarch", new Date(fromEpochTime(2000L)), null, null, null);
+        assertSame(newerVersionBuiltEarlier, poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, previous));
+
+        PackageRevisionMessage rebuiltOlderVersion = new PackageRevisionMessage("go-agent-13.8.0-1.noarch", new Date(fromEpochTime(3000L)), null, null, null);
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> rebuiltOlderVersion);
+        assertNull(poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, previous));
+    }
+
+    @Test
+    public void shouldConsiderEpochWhenBothRevisionsCarryIt() {
+        PackageRevisionMessage epochBump = new PackageRevisionMessage("go-agent-1.0-1.noarch", new Date(fromEpochTime(1000L)), null, null, null);
+        epochBump.addData(Constants.PACKAGE_EPOCH, "1");
+        poller = new PackageRepositoryPoller(new PackageRepositoryConfigurationProvider(), params -> epochBump);
+
+        PackageRevisionMessage previous = new PackageRevisionMessage("go-agent-13.9.0-1.noarch", new Date(fromEpochTime(2000L)), null, null, null);
+        previous.addData(Constants.PACKAGE_EPOCH, "0");
+        assertSame(epochBump, poller.getLatestRevisionSince(packageConfiguration, repositoryConfiguration, previous));
+    }
+
     @Test
     public void shouldThrowExceptionIfCredentialsHaveBeenProvidedAlongWithFileProtocol() {
         repositoryConfiguration.addPackageMaterialProperty(Constants.USERNAME, new PackageMaterialProperty().withValue("loser"));
@@ -282,6 +419,38 @@ public class PackageRepositoryPollerTest {
         assertTrue(("file://" + sampleRepoDirectory.getAbsolutePath() + expectedLocation).endsWith(pkg.getDataFor("LOCATION")));
     }
 
+    private List<Future<Object>> requestConcurrently(int requests) {
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    return poller.getLatestRevision(packageConfiguration, repositoryConfiguration);
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+        executor.shutdown();
+        return futures;
+    }
+
+    private void waitForCoalescedRequests(int requests) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (poller.getCoalescedRequests() < requests && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(requests, poller.getCoalescedRequests());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void assertPackageRevisionMessageEquivalent(PackageRevisionMessage expected, PackageRevisionMessage actual) {
         if (!"(none)".equals(actual.getUser())) {
             assertEquals(expected.getUser(), actual.getUser());
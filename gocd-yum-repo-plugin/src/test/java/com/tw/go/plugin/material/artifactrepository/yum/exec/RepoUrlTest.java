@@ -55,6 +55,30 @@ public class RepoUrlTest {
         assertEquals("File protocol does not support username and/or password.", errors.getValidationErrors().get(0).getMessage());
     }
 
+    @Test
+    public void shouldReturnTheSameCanonicalUrlForEquivalentUrls() {
+        String canonical = new RepoUrl("http://yum.example.com/repo", null, null).canonical();
+
+        assertEquals("http://yum.example.com/repo", canonical);
+        assertEquals(canonical, new RepoUrl("http://yum.example.com/repo/", null, null).canonical());
+        assertEquals(canonical, new RepoUrl("HTTP://Yum.Example.com:80/repo//", null, null).canonical());
+        assertEquals(canonical, new RepoUrl("http://yum.example.com//repo", "user", "password").canonical());
+        assertEquals("https://yum.example.com/repo", new RepoUrl("https://yum.example.com:443/repo", null, null).canonical());
+        assertEquals("https://yum.example.com:8443/repo", new RepoUrl("https://yum.example.com:8443/repo", null, null).canonical());
+        assertEquals(new RepoUrl("file:///var/repo", null, null).canonical(), new RepoUrl("file:///var/repo/", null, null).canonical());
+    }
+
+    @Test
+    public void shouldOnlyShareBetweenMaterialsWithTheSameCredentials() {
+        String anonymous = new RepoUrl("http://yum.example.com/repo", null, null).sharingKey();
+
+        assertEquals("http://yum.example.com/repo", anonymous);
+        assertEquals(anonymous, new RepoUrl("http://yum.example.com/repo/", null, null).sharingKey());
+        assertEquals(new RepoUrl("http://yum.example.com/repo", "user", "password").sharingKey(), new RepoUrl("http://yum.example.com/repo/", "user", "password").sharingKey());
+        assertNotEquals(anonymous, new RepoUrl("http://yum.example.com/repo", "user", "password").sharingKey());
+        assertNotEquals(new RepoUrl("http://yum.example.com/repo", "user", "password").sharingKey(), new RepoUrl("http://yum.example.com/repo", "user", "wrong").sharingKey());
+    }
+
     @Test
     public void shouldReturnURLWithBasicAuth() {
         RepoUrl repoUrl = new RepoUrl("http://localhost", "user", "password");
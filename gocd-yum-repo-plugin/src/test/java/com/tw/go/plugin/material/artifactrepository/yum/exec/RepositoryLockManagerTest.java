@@ -0,0 +1,104 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.Lease;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.LockStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.Mode.READ;
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager.Mode.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryLockManagerTest {
+    private final RepositoryLockManager locks = new RepositoryLockManager(200);
+
+    @Test
+    public void shouldLetReadersShareALock() throws Exception {
+        try (Lease first = locks.acquire("repo", READ); Lease second = locks.tryAcquire("repo", READ, 0, TimeUnit.MILLISECONDS)) {
+            assertNotNull(second);
+            assertEquals(2, locks.getStats("repo").getHolders());
+            assertNull(locks.tryAcquire("repo", WRITE, 10, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(0, locks.getStats("repo").getHolders());
+        assertEquals(1, locks.getStats("repo").getTimeouts());
+    }
+
+    @Test
+    public void shouldKeepReadersOutWhileTheWriteLockIsHeld() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Lease ignored = locks.acquire("repo", WRITE)) {
+            Future<Boolean> reader = executor.submit(() -> {
+                try (Lease lease = locks.tryAcquire("repo", READ, 5, TimeUnit.SECONDS)) {
+                    return lease != null;
+                }
+            });
+            waitForQueueDepth("repo", 1);
+            assertFalse(reader.isDone());
+            ignored.close();
+            assertTrue(reader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        LockStats stats = locks.getStats("repo");
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(2, stats.getAcquisitions());
+        long[] histogram = stats.getWaitHistogram();
+        assertEquals(RepositoryLockManager.WAIT_BUCKETS_MILLIS.length + 1, histogram.length);
+        assertEquals(2, java.util.Arrays.stream(histogram).sum());
+    }
+
+    @Test
+    public void shouldFailWhenTheLockIsNotAcquiredInTime() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Lease ignored = locks.acquire("repo", WRITE)) {
+            Future<?> writer = executor.submit(() -> locks.acquire("repo", WRITE));
+            try {
+                writer.get(5, TimeUnit.SECONDS);
+                fail("expected timeout");
+            } catch (Exception e) {
+                assertEquals("Timed out after 200 ms waiting for the write lock of repo", e.getCause().getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(locks.getStats("repo").getMaxWaitMillis() >= 200);
+    }
+
+    @Test
+    public void shouldReleaseALeaseOnlyOnce() throws Exception {
+        Lease lease = locks.acquire("repo", WRITE);
+        lease.close();
+        lease.close();
+        try (Lease again = locks.tryAcquire("repo", WRITE, 0, TimeUnit.MILLISECONDS)) {
+            assertNotNull(again);
+        }
+    }
+
+    private void waitForQueueDepth(String key, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (locks.getStats(key).getQueueDepth() != depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(depth, locks.getStats(key).getQueueDepth());
+    }
+}
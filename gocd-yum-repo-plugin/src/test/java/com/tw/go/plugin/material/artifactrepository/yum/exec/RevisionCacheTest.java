@@ -0,0 +1,71 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RevisionCacheTest {
+    private final PackageRevisionMessage agent = new PackageRevisionMessage("go-agent-13.1.1-16714.noarch", new Date(), null, null, null);
+    private final PackageRevisionMessage server = new PackageRevisionMessage("go-server-13.1.1-16714.noarch", new Date(), null, null, null);
+
+    @Test
+    public void shouldReturnCachedRevisionWhilePrimaryChecksumIsUnchanged() {
+        RevisionCache cache = new RevisionCache(10);
+        assertNull(cache.get("http://repo", "go-agent", "primary:a"));
+        cache.put("http://repo", "go-agent", "primary:a", agent);
+
+        assertSame(agent, cache.get("http://repo", "go-agent", "primary:a"));
+        assertSame(agent, cache.get("http://repo", " go-agent ", "primary:a"));
+        assertNull(cache.get("http://other", "go-agent", "primary:a"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void shouldDropAllRevisionsOfARepositoryWhenItsPrimaryChecksumChanges() {
+        RevisionCache cache = new RevisionCache(10);
+        cache.put("http://repo", "go-agent", "primary:a", agent);
+        cache.put("http://repo", "go-server", "primary:a", server);
+        cache.put("http://other", "go-agent", "primary:x", agent);
+
+        assertNull(cache.get("http://repo", "go-agent", "primary:b"));
+
+        assertNull(cache.get("http://repo", "go-server", "primary:a"));
+        assertSame(agent, cache.get("http://other", "go-agent", "primary:x"));
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedRevisions() {
+        RevisionCache cache = new RevisionCache(2);
+        cache.put("http://repo", "go-agent", "primary:a", agent);
+        cache.put("http://repo", "go-server", "primary:a", server);
+        cache.get("http://repo", "go-agent", "primary:a");
+        cache.put("http://repo", "php", "primary:a", agent);
+
+        assertSame(agent, cache.get("http://repo", "go-agent", "primary:a"));
+        assertNull(cache.get("http://repo", "go-server", "primary:a"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HelperProcessRunnerTest {
+    private static final String FAKE_HELPER = String.join("\n",
+            "import sys",
+            "D = '<=>'",
+            "for line in iter(sys.stdin.readline, ''):",
+            "    fields = line.rstrip('\\n').split('\\t')",
+            "    if fields[0] == 'PING':",
+            "        sys.stdout.write('PONG' + D + 'fake\\n')",
+            "    elif 'crash' in fields[7:]:",
+            "        sys.exit(3)",
+            "    elif 'hang' in fields[7:]:",
+            "        continue",
+            "    elif 'missing' in fields[7:]:",
+            "        sys.stdout.write(D + 'DONE' + D + '1' + D + 'no such repo\\n')",
+            "        sys.stdout.flush()",
+            "        continue",
+            "    else:",
+            "        for spec in fields[7:]:",
+            "            sys.stdout.write(D.join([fields[1], fields[2], fields[3], fields[4], fields[6], spec]) + '\\n')",
+            "    sys.stdout.write(D + 'DONE' + D + '0\\n')",
+            "    sys.stdout.flush()",
+            "");
+
+    @TempDir
+    File tempDir;
+    private RepoQueryHelperPool pool;
+
+    @AfterEach
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldAnswerRepoqueryCommandsFromALongLivedHelper() throws Exception {
+        HelperProcessRunner runner = runner(2000);
+
+        ProcessOutput first = runner.execute(repoquery(false, "go-agent", "go-server"), env());
+        ProcessOutput second = runner.execute(repoquery(true, "php"), env());
+
+        assertEquals(0, first.getReturnCode());
+        assertEquals(Arrays.asList("repo-id<=>http://repohost/some/path<=>/cache<=>0<=>rev-1<=>go-agent", "repo-id<=>http://repohost/some/path<=>/cache<=>0<=>rev-1<=>go-server"), first.getStdOut());
+        assertEquals(Collections.singletonList("repo-id<=>http://repohost/some/path<=>/cache<=>1<=>rev-1<=>php"), second.getStdOut());
+        assertEquals(1, pool.getStarted());
+    }
+
+    @Test
+    public void shouldReportFailuresOfTheHelperAsAFailedRepoquery() throws Exception {
+        HelperProcessRunner runner = runner(2000);
+
+        ProcessOutput output = runner.execute(repoquery(false, "missing"), env());
+
+        assertEquals(1, output.getReturnCode());
+        assertEquals(Collections.singletonList("no such repo"), output.getStdErr());
+        assertEquals(0, runner.execute(repoquery(false, "go-agent"), env()).getReturnCode());
+        assertEquals(1, pool.getStarted());
+    }
+
+    @Test
+    public void shouldReplaceAHelperThatCrashedOrTimedOut() throws Exception {
+        HelperProcessRunner runner = runner(500);
+
+        executeIgnoringFallback(runner, repoquery(false, "crash"));
+        executeIgnoringFallback(runner, repoquery(false, "hang"));
+        ProcessOutput output = runner.execute(repoquery(false, "go-agent"), env());
+
+        assertEquals(0, output.getReturnCode());
+        assertEquals(3, pool.getStarted());
+    }
+
+    @Test
+    public void shouldRunRequestsTheHelperCannotExpressDirectly() throws Exception {
+        HelperProcessRunner runner = runner(2000);
+
+        executeIgnoringFallback(runner, repoquery(false, "go\tagent"));
+        assertEquals(0, runner.execute(repoquery(false, "go-agent"), env()).getReturnCode());
+
+        assertEquals(1, pool.getStarted());
+    }
+
+    @Test
+    public void shouldOnlyInterceptRepoqueryCommands() {
+        assertNull(HelperProcessRunner.Invocation.parse(new String[]{"yum", "makecache"}));
+        assertNull(HelperProcessRunner.Invocation.parse(new String[]{"repoquery", "--repofrompath=id,url", "--repoid=id", "--whatprovides", "x", "--qf", "%{NAME}"}));
+
+        HelperProcessRunner.Invocation invocation = HelperProcessRunner.Invocation.parse(repoquery(true, "go-agent", "go-server"));
+        assertEquals("repo-id", invocation.repoId);
+        assertEquals("http://repohost/some/path", invocation.repoUrl);
+        assertTrue(invocation.showDuplicates);
+        assertEquals(RepoQueryCommand.QUERY_FORMAT, invocation.queryFormat);
+        assertEquals(Arrays.asList("go-agent", "go-server"), invocation.packageSpecs);
+    }
+
+    private HelperProcessRunner runner(long timeoutMillis) throws Exception {
+        File script = new File(tempDir, "fake-helper.py");
+        Files.write(script.toPath(), FAKE_HELPER.getBytes(StandardCharsets.UTF_8));
+        pool = new RepoQueryHelperPool(Collections.singletonList(Arrays.asList("python3", "-u", script.getAbsolutePath())), 1);
+        return new HelperProcessRunner(pool, timeoutMillis);
+    }
+
+    private void executeIgnoringFallback(HelperProcessRunner runner, String[] command) {
+        try {
+            runner.execute(command, env());
+        } catch (RuntimeException ignored) {
+            // repoquery itself is usually not installed where tests run
+        }
+    }
+
+    private static String[] repoquery(boolean showDuplicates, String... specs) {
+        List<String> command = new java.util.ArrayList<>(Arrays.asList("repoquery", "--repofrompath=repo-id,http://repohost/some/path", "--repoid=repo-id", "-q"));
+        if (showDuplicates) {
+            command.add("--show-duplicates");
+        }
+        command.addAll(Arrays.asList(specs));
+        command.add("--qf");
+        command.add(RepoQueryCommand.QUERY_FORMAT);
+        return command.toArray(new String[0]);
+    }
+
+    private static HashMap<String, String> env() {
+        HashMap<String, String> env = new HashMap<>();
+        env.put("TMPDIR", "/cache");
+        env.put(HelperProcessRunner.REVISION_ENV, "rev-1");
+        return env;
+    }
+}
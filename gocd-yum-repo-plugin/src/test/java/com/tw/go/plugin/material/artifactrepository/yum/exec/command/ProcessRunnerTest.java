@@ -17,12 +17,21 @@
 package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class ProcessRunnerTest {
+    @TempDir
+    File tempDir;
+
     @Test
     public void shouldRunACommand() {
         ProcessOutput output = new ProcessRunner().execute(new String[]{"echo", "foo"}, Collections.emptyMap());
@@ -58,6 +67,74 @@ public class ProcessRunnerTest {
         assertNotEquals(0, output.getReturnCode());
     }
 
+    @Test
+    public void shouldNotBlockOnCommandsWithMoreOutputThanThePipeHolds() {
+        if (isWindows()) {
+            return;
+        }
+        ProcessRunner processRunner = new ProcessRunner(30000);
+
+        ProcessOutput output = processRunner.execute(new String[]{"seq", "1", "200000"}, Collections.emptyMap());
+
+        assertEquals(0, output.getReturnCode());
+        assertEquals(200000, output.getStdOut().size());
+        assertEquals("200000", output.getStdOut().get(199999));
+        assertEquals(1, processRunner.getExecutions());
+    }
+
+    @Test
+    public void shouldKillCommandAndItsDescendantsWhenItDoesNotFinishInTime() throws Exception {
+        if (isWindows()) {
+            return;
+        }
+        File pidFile = new File(tempDir, "child.pid");
+        ProcessRunner processRunner = new ProcessRunner(500);
+        long start = System.nanoTime();
+        try {
+            processRunner.execute(new String[]{"sh", "-c", "sleep 60 & echo $! > " + pidFile.getAbsolutePath() + "; wait"}, Collections.emptyMap());
+            fail("Should have timed out");
+        } catch (ProcessRunner.ProcessTimeoutException e) {
+            assertTrue(e.getMessage().contains("did not finish within 500 ms"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+        assertEquals(1, processRunner.getTimeouts());
+        long child = Long.parseLong(new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.UTF_8).trim());
+        Optional<ProcessHandle> orphan = ProcessHandle.of(child);
+        if (orphan.isPresent()) {
+            orphan.get().onExit().get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldCountFailedCommands() {
+        if (isWindows()) {
+            return;
+        }
+        ProcessRunner processRunner = new ProcessRunner();
+
+        processRunner.execute(new String[]{"false"}, Collections.emptyMap());
+        processRunner.execute(new String[]{"true"}, Collections.emptyMap());
+
+        assertEquals(2, processRunner.getExecutions());
+        assertEquals(1, processRunner.getFailures());
+    }
+
+    @Test
+    public void shouldFailWhenOutputIsStillHeldOpenAfterTheCommandExited() {
+        if (isWindows()) {
+            return;
+        }
+        ProcessRunner processRunner = new ProcessRunner(30000);
+        try {
+            processRunner.execute(new String[]{"sh", "-c", "echo first; sleep 10 &"}, Collections.emptyMap(), line -> {
+            });
+            fail("Should have failed");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("was still held open"));
+        }
+        assertEquals(1, processRunner.getFailures());
+    }
+
     private boolean isWindows() {
         String osName = System.getProperty("os.name");
         return osName.contains("Windows");
@@ -24,9 +24,11 @@ import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevi
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand.DELIMITER;
 import static org.junit.jupiter.api.Assertions.*;
@@ -50,7 +52,7 @@ public class RepoQueryCommandTest {
         ArrayList<String> stdOut = new ArrayList<>();
         long time = 5;
         stdOut.add(repoQueryOutput(time, "packager", "http://location", "http://jenkins.job"));
-        when(processRunner.execute(expectedCommand, envMapWithDefaultValues(repoid))).thenReturn(new ProcessOutput(0, stdOut, new ArrayList<>()));
+        when(processRunner.execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any())).thenAnswer(streaming(stdOut));
         PackageRevisionMessage packageRevision = new RepoQueryCommand(processRunner, new RepoQueryParams(repoid, new RepoUrl(repourl, null, null), spec)).execute();
 
         assertEquals("name-version-release.arch", packageRevision.getRevision());
@@ -58,7 +60,7 @@ public class RepoQueryCommandTest {
         assertEquals("packager", packageRevision.getUser());
         assertEquals("http://location", packageRevision.getData().get(Constants.PACKAGE_LOCATION));
         assertEquals("http://jenkins.job", packageRevision.getTrackbackUrl());
-        verify(processRunner).execute(expectedCommand, envMapWithDefaultValues(repoid));
+        verify(processRunner).execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any());
     }
 
     @Test
@@ -74,7 +76,7 @@ public class RepoQueryCommandTest {
         long time = 5;
         stdOut.add(repoQueryOutput(time, "None", "NONE", "NOne"));
 
-        when(processRunner.execute(expectedCommand, envMapWithDefaultValues(repoid))).thenReturn(new ProcessOutput(0, stdOut, new ArrayList<>()));
+        when(processRunner.execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any())).thenAnswer(streaming(stdOut));
         PackageRevisionMessage packageRevision = new RepoQueryCommand(processRunner, new RepoQueryParams(repoid, new RepoUrl(repourl, null, null), spec)).execute();
 
         assertEquals("name-version-release.arch", packageRevision.getRevision());
@@ -83,7 +85,7 @@ public class RepoQueryCommandTest {
         assertNull(packageRevision.getData().get(Constants.PACKAGE_LOCATION));
         assertNull(packageRevision.getTrackbackUrl());
         assertNull(packageRevision.getRevisionComment());
-        verify(processRunner).execute(expectedCommand, envMapWithDefaultValues(repoid));
+        verify(processRunner).execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any());
     }
 
     @Test
@@ -91,7 +93,7 @@ public class RepoQueryCommandTest {
         ProcessRunner processRunner = mock(ProcessRunner.class);
         ArrayList<String> stdErr = new ArrayList<>();
         stdErr.add("err msg");
-        when(processRunner.execute(any(), any())).thenReturn(new ProcessOutput(1, null, stdErr));
+        when(processRunner.execute(any(), any(), any())).thenReturn(new ProcessOutput(1, null, stdErr));
         try {
             new RepoQueryCommand(processRunner, new RepoQueryParams("repoid", new RepoUrl("http://url", null, null), "spec")).execute();
             fail("expected exception");
@@ -112,11 +114,11 @@ public class RepoQueryCommandTest {
         ArrayList<String> stdOut = new ArrayList<>();
         long time = 5;
         stdOut.add(repoQueryOutput(time, "packager", "http://location", "http://jenkins.job"));
-        when(processRunner.execute(expectedCommand, envMapWithDefaultValues(repoid))).thenReturn(new ProcessOutput(0, stdOut, new ArrayList<>()));
+        when(processRunner.execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any())).thenAnswer(streaming(stdOut));
         RepoQueryParams params = new RepoQueryParams(repoid, new RepoUrl(repourl, "username", "!4321abcd"), spec);
         PackageRevisionMessage packageRevision = new RepoQueryCommand(processRunner, params).execute();
         assertNotNull(packageRevision);
-        verify(processRunner).execute(expectedCommand, envMapWithDefaultValues(repoid));
+        verify(processRunner).execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any());
     }
 
     @Test
@@ -132,11 +134,11 @@ public class RepoQueryCommandTest {
         long time = 5;
         stdOut.add(repoQueryOutput(time, "packager", "http://foo.com/bar", "http://jenkins.job"));
 
-        when(processRunner.execute(expectedCommand, envMapWithDefaultValues(repoid))).thenReturn(new ProcessOutput(0, stdOut, new ArrayList<>()));
+        when(processRunner.execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any())).thenAnswer(streaming(stdOut));
         RepoQueryParams params = new RepoQueryParams(repoid, new RepoUrl(repourl, "username", "!4321abcd"), spec);
         PackageRevisionMessage packageRevision = new RepoQueryCommand(processRunner, params).execute();
         assertEquals("http://foo.com/bar", packageRevision.getData().get(Constants.PACKAGE_LOCATION));
-        verify(processRunner).execute(expectedCommand, envMapWithDefaultValues(repoid));
+        verify(processRunner).execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any());
     }
 
     @Test
@@ -155,17 +157,50 @@ public class RepoQueryCommandTest {
                 + DELIMITER + "trackback" + DELIMITER + "revision Comment");
         stdOut.add("getPackage/go-agent-13.1.0-13422.x86_64.rpm" + DELIMITER + "go-agent" + DELIMITER + "13.1.0" + DELIMITER + "13422" + DELIMITER + "x86_64" + DELIMITER + time + DELIMITER + "packager" +
                 DELIMITER + "http://foo.com/bar" + DELIMITER + "trackback" + DELIMITER + "revision Comment");
-        when(processRunner.execute(expectedCommand, envMapWithDefaultValues(repoid))).thenReturn(new ProcessOutput(0, stdOut, new ArrayList<>()));
+        when(processRunner.execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any())).thenAnswer(streaming(stdOut));
         RepoQueryParams params = new RepoQueryParams(repoid, new RepoUrl(repourl, "username", "!4321abcd"), spec);
         try {
             new RepoQueryCommand(processRunner, params).execute();
             fail("expected failure");
         } catch (Exception e) {
             assertTrue(e.getMessage().contains("Given Package Spec (go-agent) resolves to more than one file on the repository: go-agent-13.1.0-13422.noarch.rpm, go-agent-13.1.0-13422.x86_64.rpm"));
-            verify(processRunner).execute(expectedCommand, envMapWithDefaultValues(repoid));
+            verify(processRunner).execute(eq(expectedCommand), eq(envMapWithDefaultValues(repoid)), any());
         }
     }
 
+    @Test
+    public void shouldListOnlyTheFirstFilesOfAVeryAmbiguousSpec() {
+        ProcessRunner processRunner = mock(ProcessRunner.class);
+        ArrayList<String> stdOut = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            stdOut.add("getPackage/go-agent-13.1." + i + "-1.noarch.rpm" + DELIMITER + "go-agent" + DELIMITER + "13.1." + i + DELIMITER + "1" + DELIMITER + "noarch" + DELIMITER + 5 + DELIMITER + "packager"
+                    + DELIMITER + "http://foo.com/bar" + DELIMITER + "trackback" + DELIMITER + "0");
+        }
+        when(processRunner.execute(any(), any(), any())).thenAnswer(streaming(stdOut));
+        try {
+            new RepoQueryCommand(processRunner, new RepoQueryParams("repoid", new RepoUrl("http://url", null, null), "go-agent*")).execute();
+            fail("expected failure");
+        } catch (MultiplePackageException e) {
+            assertEquals("Given Package Spec (go-agent*) resolves to more than one file on the repository: go-agent-13.1.0-1.noarch.rpm, go-agent-13.1.1-1.noarch.rpm, "
+                    + "go-agent-13.1.2-1.noarch.rpm, go-agent-13.1.3-1.noarch.rpm, go-agent-13.1.4-1.noarch.rpm, go-agent-13.1.5-1.noarch.rpm, go-agent-13.1.6-1.noarch.rpm, "
+                    + "go-agent-13.1.7-1.noarch.rpm, go-agent-13.1.8-1.noarch.rpm, go-agent-13.1.9-1.noarch.rpm and 990 more", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldParseRhel8BuildTimes() {
+        ProcessRunner processRunner = mock(ProcessRunner.class);
+        ArrayList<String> stdOut = new ArrayList<>();
+        stdOut.add("relativepath" + DELIMITER + "name" + DELIMITER + "version" + DELIMITER + "release" + DELIMITER + "arch" + DELIMITER + "2021-03-04 5:06" + DELIMITER + "packager"
+                + DELIMITER + "location" + DELIMITER + "url" + DELIMITER + "2");
+        when(processRunner.execute(any(), any(), any())).thenAnswer(streaming(stdOut));
+
+        PackageRevisionMessage packageRevision = new RepoQueryCommand(processRunner, new RepoQueryParams("repoid", new RepoUrl("http://url", null, null), "name")).execute();
+
+        assertEquals(new Date(1614834360000L), packageRevision.getTimestamp());
+        assertEquals("2", packageRevision.getData().get(Constants.PACKAGE_EPOCH));
+    }
+
     @Test
     public void shouldHandleMultipleThreads() throws InterruptedException {
         final StringBuilder errors = new StringBuilder();
@@ -187,6 +222,14 @@ public class RepoQueryCommandTest {
         }
     }
 
+    private static Answer<ProcessOutput> streaming(List<String> stdOut) {
+        return invocation -> {
+            Consumer<String> consumer = invocation.getArgument(2);
+            stdOut.forEach(consumer);
+            return new ProcessOutput(0, new ArrayList<>(), new ArrayList<>());
+        };
+    }
+
     private String repoQueryOutput(long time, String packager, String location, String trackbackUrl) {
         return "relativepath" + DELIMITER + "name" + DELIMITER + "version" + DELIMITER + "release" + DELIMITER + "arch" + DELIMITER + time + DELIMITER + packager + DELIMITER + location + DELIMITER + trackbackUrl;
     }
@@ -198,7 +241,7 @@ public class RepoQueryCommandTest {
                 "-q",
                 spec,
                 "--qf",
-                "%{RELATIVEPATH}" + DELIMITER + "%{NAME}" + DELIMITER + "%{VERSION}" + DELIMITER + "%{RELEASE}" + DELIMITER + "%{ARCH}" + DELIMITER + "%{BUILDTIME}" + DELIMITER + "%{PACKAGER}" + DELIMITER + "%{LOCATION}" + DELIMITER + "%{URL}"};
+                "%{RELATIVEPATH}" + DELIMITER + "%{NAME}" + DELIMITER + "%{VERSION}" + DELIMITER + "%{RELEASE}" + DELIMITER + "%{ARCH}" + DELIMITER + "%{BUILDTIME}" + DELIMITER + "%{PACKAGER}" + DELIMITER + "%{LOCATION}" + DELIMITER + "%{URL}" + DELIMITER + "%{EPOCH}"};
     }
 
     private Map<String, String> envMapWithDefaultValues(String repoid) {
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.command;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryCommand.DELIMITER;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepoQueryEngineTest {
+    private final RepoUrl repository = new RepoUrl("http://repohost/some/path", null, null);
+
+    @Test
+    public void shouldResolveConcurrentSpecsOfARepositoryWithOneRepoquery() throws Exception {
+        RecordingProcessRunner processRunner = new RecordingProcessRunner(Arrays.asList(
+                line("go-agent", "13.1.0", "13422", "noarch", "0", 10),
+                line("go-agent", "13.1.1", "16714", "noarch", "0", 5),
+                line("go-server", "13.1.1", "16714", "noarch", "0", 5)));
+        RepoQueryEngine engine = new RepoQueryEngine(processRunner, 200);
+
+        List<PackageRevisionMessage> revisions = queryConcurrently(engine, "go-agent", "go-server", "go-agent-13.1.0", "go-agent");
+
+        assertEquals(1, processRunner.commands.size());
+        List<String> command = Arrays.asList(processRunner.commands.get(0));
+        assertTrue(command.contains("--show-duplicates"));
+        assertTrue(command.containsAll(Arrays.asList("go-agent", "go-server", "go-agent-13.1.0")));
+        assertEquals("go-agent-13.1.1-16714.noarch", revisions.get(0).getRevision());
+        assertEquals("go-server-13.1.1-16714.noarch", revisions.get(1).getRevision());
+        assertEquals("go-agent-13.1.0-13422.noarch", revisions.get(2).getRevision());
+        assertEquals("go-agent-13.1.1-16714.noarch", revisions.get(3).getRevision());
+    }
+
+    @Test
+    public void shouldReportEachSpecOfABatchSeparately() throws Exception {
+        RecordingProcessRunner processRunner = new RecordingProcessRunner(Arrays.asList(
+                line("go-agent", "13.1.1", "16714", "noarch", "0", 5),
+                line("go-agent", "13.1.1", "16714", "x86_64", "0", 5)));
+        RepoQueryEngine engine = new RepoQueryEngine(processRunner, 200);
+
+        List<Object> outcomes = queryConcurrentlyCatching(engine, "go-agent.x86_64", "go-agent", "php");
+
+        assertEquals("go-agent-13.1.1-16714.x86_64", ((PackageRevisionMessage) outcomes.get(0)).getRevision());
+        assertTrue(outcomes.get(1) instanceof MultiplePackageException);
+        assertEquals("Error while querying repository with path 'http://repohost/some/path' and package spec 'php'. ", ((RuntimeException) outcomes.get(2)).getMessage());
+        assertEquals(1, processRunner.commands.size());
+    }
+
+    @Test
+    public void shouldFallBackToOneRepoqueryPerSpecWhenTheBatchFails() throws Exception {
+        RecordingProcessRunner processRunner = new RecordingProcessRunner(Collections.singletonList(line("go-agent", "13.1.1", "16714", "noarch", "0", 5))) {
+            @Override
+            public ProcessOutput execute(String[] command, Map<String, String> envMap, Consumer<String> stdOutConsumer) {
+                if (Arrays.asList(command).contains("--show-duplicates")) {
+                    commands.add(command);
+                    return new ProcessOutput(1, new ArrayList<>(), Collections.singletonList("boom"));
+                }
+                return super.execute(command, envMap, stdOutConsumer);
+            }
+        };
+        RepoQueryEngine engine = new RepoQueryEngine(processRunner, 200);
+
+        List<PackageRevisionMessage> revisions = queryConcurrently(engine, "go-agent", "go-agent.noarch");
+
+        assertEquals(3, processRunner.commands.size());
+        assertEquals("go-agent-13.1.1-16714.noarch", revisions.get(0).getRevision());
+        assertEquals("go-agent-13.1.1-16714.noarch", revisions.get(1).getRevision());
+    }
+
+    @Test
+    public void shouldRunOneRepoqueryPerSpecWhenBatchingIsOff() {
+        RecordingProcessRunner processRunner = new RecordingProcessRunner(Collections.singletonList(line("go-agent", "13.1.1", "16714", "noarch", "0", 5)));
+        RepoQueryEngine engine = new RepoQueryEngine(processRunner, 0);
+
+        engine.query(new RepoQueryParams("repoid", repository, "go-agent"));
+        engine.query(new RepoQueryParams("repoid", repository, "go-agent"));
+
+        assertEquals(2, processRunner.commands.size());
+        assertFalse(Arrays.asList(processRunner.commands.get(0)).contains("--show-duplicates"));
+    }
+
+    private List<PackageRevisionMessage> queryConcurrently(RepoQueryEngine engine, String... specs) throws Exception {
+        List<PackageRevisionMessage> revisions = new ArrayList<>();
+        for (Object outcome : queryConcurrentlyCatching(engine, specs)) {
+            if (outcome instanceof RuntimeException) {
+                throw (RuntimeException) outcome;
+            }
+            revisions.add((PackageRevisionMessage) outcome);
+        }
+        return revisions;
+    }
+
+    private List<Object> queryConcurrentlyCatching(RepoQueryEngine engine, String... specs) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(specs.length);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (String spec : specs) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return engine.query(new RepoQueryParams("repoid", repository, spec));
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+        start.countDown();
+        List<Object> outcomes = new ArrayList<>();
+        for (Future<Object> future : futures) {
+            outcomes.add(future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return outcomes;
+    }
+
+    private String line(String name, String version, String release, String arch, String epoch, long buildTime) {
+        String file = String.format("%s-%s-%s.%s.rpm", name, version, release, arch);
+        return file + DELIMITER + name + DELIMITER + version + DELIMITER + release + DELIMITER + arch + DELIMITER + buildTime + DELIMITER + "packager"
+                + DELIMITER + "http://repohost/some/path/" + file + DELIMITER + "None" + DELIMITER + epoch;
+    }
+
+    private static class RecordingProcessRunner extends ProcessRunner {
+        final List<String[]> commands = new CopyOnWriteArrayList<>();
+        final List<String> output;
+
+        RecordingProcessRunner(List<String> output) {
+            this.output = output;
+        }
+
+        @Override
+        public ProcessOutput execute(String[] command, Map<String, String> envMap, Consumer<String> stdOutConsumer) {
+            commands.add(command);
+            output.forEach(stdOutConsumer);
+            return new ProcessOutput(0, new ArrayList<>(), new ArrayList<>());
+        }
+    }
+}
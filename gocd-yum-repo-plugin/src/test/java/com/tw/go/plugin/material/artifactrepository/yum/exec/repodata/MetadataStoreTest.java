@@ -0,0 +1,98 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataStoreTest {
+    private static final byte[] CONTENT = "primary metadata".getBytes(StandardCharsets.UTF_8);
+    private static final String CHECKSUM = DigestUtils.sha256Hex(CONTENT);
+
+    @TempDir
+    Path temp;
+    private MetadataStore store;
+    private AtomicInteger writes;
+
+    @BeforeEach
+    public void setUp() {
+        store = new MetadataStore(temp.toFile());
+        writes = new AtomicInteger();
+    }
+
+    @Test
+    public void shouldStoreMetadataOnceForEveryRepositoryThatUsesIt() throws IOException {
+        File first = new File(store.directoryOf(new RepoUrl("http://mirror-a.example.com/repo", null, null)), "primary.sqlite");
+        File second = new File(store.directoryOf(new RepoUrl("http://mirror-b.example.com/repo", null, null)), "primary.sqlite");
+
+        assertTrue(store.link(first, CHECKSUM, ".sqlite", this::write));
+        assertFalse(store.link(second, CHECKSUM, ".sqlite", this::write));
+
+        assertEquals(1, writes.get());
+        assertArrayEquals(CONTENT, Files.readAllBytes(second.toPath()));
+        assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+        assertEquals(1, store.getFilesWritten());
+        assertEquals(1, store.getFilesShared());
+    }
+
+    @Test
+    public void shouldRemoveStoredMetadataOnceNoRepositoryLinksToIt() throws IOException {
+        File first = new File(store.directoryOf(new RepoUrl("http://mirror-a.example.com/repo", null, null)), "primary.sqlite");
+        File second = new File(store.directoryOf(new RepoUrl("http://mirror-b.example.com/repo", null, null)), "primary.sqlite");
+        store.link(first, CHECKSUM, ".sqlite", this::write);
+        store.link(second, CHECKSUM, ".sqlite", this::write);
+        File object = store.objectFor(CHECKSUM, ".sqlite");
+
+        assertTrue(first.delete());
+        store.removeUnreferenced();
+        assertTrue(object.exists());
+
+        assertTrue(second.delete());
+        store.removeUnreferenced();
+        assertFalse(object.exists());
+    }
+
+    @Test
+    public void shouldLeaveNothingBehindWhenWritingFails() {
+        File target = new File(store.directoryOf(new RepoUrl("http://mirror-a.example.com/repo", null, null)), "primary.sqlite");
+
+        assertThrows(IOException.class, () -> store.link(target, CHECKSUM, ".sqlite", file -> {
+            throw new IOException("connection reset");
+        }));
+
+        assertFalse(target.exists());
+        assertArrayEquals(new String[0], store.objectFor(CHECKSUM, ".sqlite").getParentFile().list((dir, name) -> !name.endsWith(MetadataStore.LOCK_SUFFIX)));
+    }
+
+    private void write(File file) throws IOException {
+        writes.incrementAndGet();
+        Files.write(file.toPath(), CONTENT);
+    }
+}
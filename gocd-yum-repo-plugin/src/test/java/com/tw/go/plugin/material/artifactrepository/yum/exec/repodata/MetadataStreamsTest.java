@@ -0,0 +1,126 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.UnsupportedMetadataException;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataStreamsTest {
+    private static final byte[] XML = "<metadata packages=\"1\"><package type=\"rpm\"><name>go-agent</name></package></metadata>".getBytes(StandardCharsets.UTF_8);
+
+    private interface Compressor {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    @Test
+    public void shouldPickTheDecompressorByTheLocationOfTheMetadata() throws IOException {
+        assertDecompresses("repodata/abc-primary.xml.gz", GZIPOutputStream::new);
+        assertDecompresses("repodata/abc-primary.xml.bz2", BZip2CompressorOutputStream::new);
+        assertDecompresses("repodata/abc-primary.xml.xz", XZCompressorOutputStream::new);
+        assertDecompresses("repodata/abc-primary.xml.zst", ZstdCompressorOutputStream::new);
+        assertDecompresses("repodata/abc-primary.xml.ZST", ZstdCompressorOutputStream::new);
+        assertDecompresses("repodata/abc-primary.xml", out -> out);
+    }
+
+    @Test
+    public void shouldRejectMetadataOfUnknownCompression() {
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/abc-primary.xml.lz4", null, null, null, null, 0, 0);
+
+        UnsupportedMetadataException e = assertThrows(UnsupportedMetadataException.class, () -> MetadataStreams.decompress(primary, new ByteArrayInputStream(XML)));
+        assertEquals("Unsupported compression for primary metadata 'repodata/abc-primary.xml.lz4'.", e.getMessage());
+    }
+
+    @Test
+    public void shouldVerifyChecksumsWhileDecompressing() throws IOException {
+        byte[] compressed = gzip(XML);
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/abc-primary.xml.gz", "sha256", DigestUtils.sha256Hex(compressed), "sha256", DigestUtils.sha256Hex(XML), compressed.length, XML.length);
+
+        try (InputStream stream = MetadataStreams.pipeline(primary, new ByteArrayInputStream(compressed))) {
+            assertArrayEquals(XML, IOUtils.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void shouldFailAtTheEndOfTheStreamWhenTheChecksumDoesNotMatch() throws IOException {
+        byte[] compressed = gzip(XML);
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/abc-primary.xml.gz", "sha256", DigestUtils.sha256Hex(compressed), "sha256", DigestUtils.sha256Hex("something else"), compressed.length, XML.length);
+
+        try (InputStream stream = MetadataStreams.pipeline(primary, new ByteArrayInputStream(compressed))) {
+            CorruptMetadataException e = assertThrows(CorruptMetadataException.class, () -> IOUtils.toByteArray(stream));
+            assertTrue(e.getMessage().startsWith("Uncompressed repodata/abc-primary.xml.gz has checksum"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldFailOnTruncatedMetadata() throws IOException {
+        byte[] truncated = Arrays.copyOf(XML, XML.length - 10);
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/abc-primary.xml", "sha256", DigestUtils.sha256Hex(XML), null, null, XML.length, 0);
+
+        try (InputStream stream = MetadataStreams.pipeline(primary, new ByteArrayInputStream(truncated))) {
+            CorruptMetadataException e = assertThrows(CorruptMetadataException.class, () -> IOUtils.toByteArray(stream));
+            assertEquals(String.format("repodata/abc-primary.xml has %d bytes instead of the %d listed in repomd.xml", truncated.length, XML.length), e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldFailAsSoonAsMoreBytesThanListedArrive() throws IOException {
+        byte[] compressed = gzip(XML);
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/abc-primary.xml.gz", "sha256", DigestUtils.sha256Hex(compressed), null, null, 10, 0);
+
+        try (InputStream stream = MetadataStreams.verified(primary, new ByteArrayInputStream(compressed))) {
+            CorruptMetadataException e = assertThrows(CorruptMetadataException.class, () -> IOUtils.toByteArray(stream));
+            assertEquals("repodata/abc-primary.xml.gz is larger than the 10 bytes listed in repomd.xml", e.getMessage());
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void assertDecompresses(String location, Compressor compressor) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = compressor.wrap(compressed)) {
+            out.write(XML);
+        }
+        RepoDataEntry primary = new RepoDataEntry("primary", location, null, null, null, null, 0, 0);
+
+        try (InputStream stream = MetadataStreams.pipeline(primary, new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(XML, IOUtils.toByteArray(stream), location);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.Constants;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.MultiplePackageException;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NativeQueryEngineTest {
+    @TempDir
+    Path temp;
+    private String repoUrl;
+    private NativeQueryEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        repoUrl = "file://" + new File("src/test/repos/samplerepo").getAbsolutePath();
+        engine = new NativeQueryEngine(new RepositoryRegistry());
+    }
+
+    @Test
+    public void shouldResolvePackageFromPrimaryMetadata() {
+        PackageRevisionMessage revision = engine.query(params(repoUrl, "go-agent"));
+
+        assertEquals("go-agent-13.1.1-16714.noarch", revision.getRevision());
+        assertEquals(new Date(1365054258000L), revision.getTimestamp());
+        assertNull(revision.getUser());
+        assertNull(revision.getTrackbackUrl());
+        assertEquals(repoUrl + "/go-agent-13.1.1-16714.noarch.rpm", revision.getDataFor(Constants.PACKAGE_LOCATION));
+    }
+
+    @Test
+    public void shouldResolveLocationOfPackagesInSubdirectories() {
+        PackageRevisionMessage revision = engine.query(params(repoUrl + "/", "php"));
+
+        assertEquals("php-0-0.noarch", revision.getRevision());
+        assertEquals(repoUrl + "/innerFolder/php-0-0.noarch.rpm", revision.getDataFor(Constants.PACKAGE_LOCATION));
+    }
+
+    @Test
+    public void shouldFailWhenSpecResolvesToMoreThanOnePackage() {
+        try {
+            engine.query(params(repoUrl, "go*"));
+            fail("expected failure");
+        } catch (MultiplePackageException e) {
+            assertEquals("Given Package Spec (go*) resolves to more than one file on the repository: go-agent-13.1.1-16714.noarch.rpm, go-server-13.1.1-16714.noarch.rpm", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldFailWhenNoPackageMatches() {
+        try {
+            engine.query(params(repoUrl, "go-a"));
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith(String.format("Error while querying repository with path '%s' and package spec 'go-a'.", repoUrl)));
+        }
+    }
+
+    @Test
+    public void shouldFailWhenRepositoryIsEmpty() {
+        String emptyRepoUrl = "file://" + new File("src/test/repos/emptyrepo").getAbsolutePath();
+        try {
+            engine.query(params(emptyRepoUrl, "go-agent"));
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith(String.format("Error while querying repository with path '%s' and package spec 'go-agent'.", emptyRepoUrl)));
+        }
+    }
+
+    @Test
+    public void shouldReuseIndexSnapshotWhileRepositoryMetadataIsUnchanged() {
+        PackageIndex first = engine.indexFor(new RepoUrl(repoUrl, null, null));
+        PackageIndex second = engine.indexFor(new RepoUrl(repoUrl + "//", null, null));
+
+        assertSame(first, second);
+        assertEquals(5, first.size());
+    }
+
+    @Test
+    public void shouldUseMetadataHandedInWithTheQueryInsteadOfFetchingItAgain() {
+        RepoUrl repository = new RepoUrl(repoUrl, null, null);
+        MetadataGeneration fetchedByPoller = new RepositoryRegistry().currentGeneration(repository);
+        RepositoryRegistry registry = new RepositoryRegistry();
+
+        PackageRevisionMessage revision = new NativeQueryEngine(registry).query(new RepoQueryParams("repoid", repository, "go-agent", fetchedByPoller));
+
+        assertEquals("go-agent-13.1.1-16714.noarch", revision.getRevision());
+        assertEquals(0, registry.getGenerationsLoaded(repository));
+    }
+
+    @Test
+    public void shouldKeepAnsweringFromTheLastGoodMetadataWhenNewPrimaryMetadataIsCorrupt() throws IOException {
+        FileUtils.copyDirectory(new File("src/test/repos/samplerepo"), temp.toFile());
+        RepositoryRegistry registry = new RepositoryRegistry();
+        NativeQueryEngine engine = new NativeQueryEngine(registry);
+        RepoUrl repository = new RepoUrl("file://" + temp.toAbsolutePath(), null, null);
+        MetadataGeneration good = registry.currentGeneration(repository);
+        engine.query(new RepoQueryParams("repoid", repository, "go-agent", good));
+
+        Path repomd = temp.resolve("repodata/repomd.xml");
+        String checksum = "<checksum type=\"sha256\">87401a102123e93955c2f41193e1fb5fe50a27c3cbc6adb0aa67d649b3653351</checksum>";
+        String content = new String(Files.readAllBytes(repomd), StandardCharsets.UTF_8);
+        Files.write(repomd, content.replace(checksum, "<checksum type=\"sha256\">" + DigestUtils.sha256Hex("something else") + "</checksum>").getBytes(StandardCharsets.UTF_8));
+        MetadataGeneration corrupt = registry.currentGeneration(repository);
+        assertNotSame(good, corrupt);
+
+        PackageRevisionMessage revision = engine.query(new RepoQueryParams("repoid", repository, "go-agent", corrupt));
+
+        assertEquals("go-agent-13.1.1-16714.noarch", revision.getRevision());
+        assertTrue(corrupt.isRejected());
+        assertFalse(good.isRejected());
+    }
+
+    private RepoQueryParams params(String url, String spec) {
+        return new RepoQueryParams("repoid", new RepoUrl(url, null, null), spec);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackageIndexTest {
+    private final PackageIndex index = new PackageIndex.Builder()
+            .add(pkg("mycomp", "noarch", "1.2.0", "b1", 100))
+            .add(pkg("mycomp", "noarch", "1.3.0", "b7", 300))
+            .add(pkg("mycomp", "noarch", "1.2.1", "b4", 200))
+            .add(pkg("mycomp", "x86_64", "1.2.1", "b4", 200))
+            .add(pkg("other", "noarch", "1.0", "1", 50))
+            .build("rev/checksum");
+
+    @Test
+    public void shouldKeepAllEvrsOfANameArchNewestFirst() {
+        List<PrimaryPackage> evrs = index.byArch("mycomp").get("noarch");
+
+        assertEquals(3, evrs.size());
+        assertEquals("1.3.0", evrs.get(0).getVersion());
+        assertEquals("1.2.1", evrs.get(1).getVersion());
+        assertEquals("1.2.0", evrs.get(2).getVersion());
+        assertEquals(5, index.size());
+        assertTrue(index.byArch("missing").isEmpty());
+    }
+
+    @Test
+    public void shouldReturnNewestMatchingPackagePerNameArch() {
+        List<PrimaryPackage> matches = index.newestMatches(PackageSpec.compile("mycomp-1.2.*.noarch"));
+
+        assertEquals(1, matches.size());
+        assertEquals("mycomp-1.2.1-b4.noarch", matches.get(0).getLabel());
+    }
+
+    @Test
+    public void shouldReturnOneMatchForEveryMatchingNameArch() {
+        assertEquals(2, index.newestMatches(PackageSpec.compile("mycomp")).size());
+        assertEquals(3, index.newestMatches(PackageSpec.compile("*")).size());
+        assertTrue(index.newestMatches(PackageSpec.compile("mycomp-2*")).isEmpty());
+    }
+
+    @Test
+    public void shouldOnlyConsiderNamesStartingWithTheLiteralPrefixOfAGlob() {
+        PackageIndex.Builder builder = new PackageIndex.Builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add(pkg("lib" + i, "x86_64", "1.0", "1", i));
+        }
+        builder.add(pkg("mycomp", "noarch", "1.2.3", "1", 1)).add(pkg("mycomp-tools", "noarch", "1.2.3", "1", 1));
+        PackageIndex large = builder.build("rev/checksum");
+
+        assertEquals(Arrays.asList("mycomp"), new ArrayList<>(large.candidateNames(PackageSpec.compile("mycomp-1.2.*"))));
+        assertEquals(Arrays.asList("mycomp", "mycomp-tools"), new ArrayList<>(large.candidateNames(PackageSpec.compile("mycomp-*"))));
+        assertEquals(Arrays.asList("lib99", "lib990", "lib991", "lib992", "lib993", "lib994", "lib995", "lib996", "lib997", "lib998", "lib999"),
+                new ArrayList<>(large.candidateNames(PackageSpec.compile("lib99*"))));
+        assertEquals(1002, large.candidateNames(PackageSpec.compile("*.noarch")).size());
+        assertEquals("mycomp-1.2.3-1.noarch", large.newestMatches(PackageSpec.compile("mycomp-1.2.*")).get(0).getLabel());
+    }
+
+    @Test
+    public void shouldLookUpCompleteLabelsDirectly() {
+        List<PrimaryPackage> matches = index.newestMatches(PackageSpec.compile("0:mycomp-1.2.0-b1.noarch"));
+
+        assertEquals(1, matches.size());
+        assertEquals(100, matches.get(0).getBuildTime());
+        assertTrue(index.newestMatches(PackageSpec.compile("1:mycomp-1.2.0-b1.noarch")).isEmpty());
+        assertEquals(2, index.newestMatches(PackageSpec.compile("mycomp-1.2.1-b4")).size());
+    }
+
+    @Test
+    public void shouldPickNewestByEvrEvenWhenItWasBuiltEarlier() {
+        PackageIndex rebuilt = new PackageIndex.Builder()
+                .add(pkg("mycomp", "noarch", "1.10.0", "1", 100))
+                .add(pkg("mycomp", "noarch", "1.9.0", "1", 200))
+                .add(pkg("mycomp", "noarch", "1.9.0~rc1", "1", 300))
+                .build("rev/checksum");
+
+        assertEquals("mycomp-1.10.0-1.noarch", rebuilt.newestMatches(PackageSpec.compile("mycomp")).get(0).getLabel());
+        assertEquals("mycomp-1.9.0-1.noarch", rebuilt.newestMatches(PackageSpec.compile("mycomp-1.9*")).get(0).getLabel());
+    }
+
+    private PrimaryPackage pkg(String name, String arch, String version, String release, long buildTime) {
+        return new PrimaryPackage(name, arch, "0", version, release, buildTime, null, null, String.format("%s-%s-%s.%s.rpm", name, version, release, arch), null);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PackageSpecTest {
+    private final PrimaryPackage goAgent = new PrimaryPackage("go-agent", "noarch", "0", "13.1.1", "16714", 1365054258L, null, null, "go-agent-13.1.1-16714.noarch.rpm", null);
+
+    @Test
+    public void shouldMatchAllDocumentedSpecFormats() {
+        assertTrue(PackageSpec.compile("go-agent").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent.noarch").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-13.1.1").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-13.1.1-16714").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-13.1.1-16714.noarch").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-0:13.1.1-16714.noarch").matches(goAgent));
+        assertTrue(PackageSpec.compile("0:go-agent-13.1.1-16714.noarch").matches(goAgent));
+    }
+
+    @Test
+    public void shouldNotTreatPlainSpecAsPrefix() {
+        assertFalse(PackageSpec.compile("go-a").matches(goAgent));
+        assertFalse(PackageSpec.compile("go-agent-13.1").matches(goAgent));
+        assertFalse(PackageSpec.compile("go-agent.x86_64").matches(goAgent));
+    }
+
+    @Test
+    public void shouldMatchShellGlobs() {
+        assertTrue(PackageSpec.compile("go*").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-13.1.*").matches(goAgent));
+        assertTrue(PackageSpec.compile("g?-agent").matches(goAgent));
+        assertTrue(PackageSpec.compile("[gh]o-agent").matches(goAgent));
+        assertTrue(PackageSpec.compile("[!h]o-agent").matches(goAgent));
+        assertFalse(PackageSpec.compile("[!g]o-agent").matches(goAgent));
+        assertFalse(PackageSpec.compile("go-agent-13.2.*").matches(goAgent));
+        assertFalse(PackageSpec.compile("go?agent+").matches(goAgent));
+    }
+
+    @Test
+    public void shouldTreatRegexCharactersLiterally() {
+        PrimaryPackage gcc = new PrimaryPackage("gcc-c++", "x86_64", "0", "4.8.5", "44.el7", 1L, null, null, "gcc-c++-4.8.5-44.el7.x86_64.rpm", null);
+        assertTrue(PackageSpec.compile("gcc-c++").matches(gcc));
+        assertTrue(PackageSpec.compile("gcc-c++-4.8.*").matches(gcc));
+        assertFalse(PackageSpec.compile("gcc-c+*-4?8.5").matches(goAgent));
+    }
+
+    @Test
+    public void shouldExposeLiteralPrefixAndExactNameCandidatesForIndexedLookups() {
+        assertEquals("go-agent", PackageSpec.compile("go-agent").getLiteralPrefix());
+        assertEquals(Arrays.asList("go", "go-agent"), PackageSpec.compile("go-agent").getExactNameCandidates());
+        assertEquals(Arrays.asList("go", "go-agent", "go-agent-13", "go-agent-13.1", "go-agent-13.1.1"), PackageSpec.compile("0:go-agent-13.1.1").getExactNameCandidates());
+
+        assertEquals("go-agent-13.1.", PackageSpec.compile("go-agent-13.1.*").getLiteralPrefix());
+        assertEquals(Arrays.asList("go", "go-agent", "go-agent-13", "go-agent-13.1"), PackageSpec.compile("go-agent-13.1.*").getExactNameCandidates());
+        assertEquals("", PackageSpec.compile("*agent").getLiteralPrefix());
+        assertEquals(Collections.emptyList(), PackageSpec.compile("*agent").getExactNameCandidates());
+    }
+
+    @Test
+    public void shouldMatchCharacterClassesLikeFnmatch() {
+        assertTrue(PackageSpec.compile("go-agent-1[0-9].*").matches(goAgent));
+        assertTrue(PackageSpec.compile("go[-_]agent").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent-13.1.1-1671[!0-3]").matches(goAgent));
+        assertFalse(PackageSpec.compile("go-agent-13.1.1-1671[0-3]").matches(goAgent));
+        assertFalse(PackageSpec.compile("go-agent[").matches(goAgent));
+        assertTrue(PackageSpec.compile("go-agent*****").matches(goAgent));
+    }
+
+    @Test
+    public void shouldNotNarrowGlobsThatCanMatchTheEpochForm() {
+        assertTrue(PackageSpec.compile("0*").matches(goAgent));
+        assertEquals("", PackageSpec.compile("0*").getLiteralPrefix());
+        assertEquals("go", PackageSpec.compile("0:go*").getLiteralPrefix());
+    }
+
+    @Test
+    public void shouldReuseCompiledSpecs() {
+        assertSame(PackageSpec.compile("go-agent-13.*"), PackageSpec.compile(" go-agent-13.* "));
+    }
+}
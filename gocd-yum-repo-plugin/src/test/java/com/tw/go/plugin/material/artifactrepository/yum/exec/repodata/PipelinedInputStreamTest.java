@@ -0,0 +1,128 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelinedInputStreamTest {
+    @Test
+    public void shouldHandOverEveryByteInOrder() throws IOException {
+        byte[] data = new byte[1_000_003];
+        new Random(42).nextBytes(data);
+
+        try (InputStream stream = new PipelinedInputStream(new ByteArrayInputStream(data), 4096, 2)) {
+            assertArrayEquals(data, IOUtils.toByteArray(stream));
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    public void shouldInflateOnProducerThread() throws IOException {
+        byte[] xml = "<metadata packages=\"0\"></metadata>".getBytes();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(xml);
+        }
+        RepoDataEntry primary = new RepoDataEntry("primary", "repodata/primary.xml.gz", null, null, null, null, 0, 0);
+
+        try (InputStream stream = MetadataStreams.pipeline(primary, new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(xml, IOUtils.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void shouldRethrowFailureOfSourceToReader() throws IOException {
+        InputStream failing = new InputStream() {
+            private int remaining = 10;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- <= 0) {
+                    throw new IOException("connection reset");
+                }
+                return 'a';
+            }
+        };
+
+        try (InputStream stream = new PipelinedInputStream(failing, 4, 2)) {
+            IOUtils.toByteArray(stream);
+            fail("expected failure");
+        } catch (IOException e) {
+            assertEquals("connection reset", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldReportInterruptedProducerAsFailureInsteadOfEndOfStream() throws IOException {
+        InputStream interrupting = new InputStream() {
+            @Override
+            public int read() {
+                Thread.currentThread().interrupt();
+                return 'a';
+            }
+        };
+
+        try (InputStream stream = new PipelinedInputStream(interrupting, 4, 2)) {
+            assertThrows(InterruptedIOException.class, () -> IOUtils.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void shouldStopProducerWhenClosedBeforeEndOfStream() throws IOException {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 'a';
+            }
+        };
+
+        InputStream stream = new PipelinedInputStream(endless, 16, 2);
+        assertEquals('a', stream.read());
+        stream.close();
+
+        assertThrows(IOException.class, stream::read);
+    }
+
+    @Test
+    public void shouldCloseSourceOnProducerThreadWhenDone() throws IOException {
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream source = new ByteArrayInputStream(new byte[100]) {
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+
+        try (InputStream stream = new PipelinedInputStream(source, 16, 2)) {
+            IOUtils.toByteArray(stream);
+        }
+
+        assertTrue(closed.get());
+    }
+}
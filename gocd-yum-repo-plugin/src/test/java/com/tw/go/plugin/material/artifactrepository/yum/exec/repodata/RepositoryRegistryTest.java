@@ -0,0 +1,188 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepositoryLockManager;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryRegistryTest {
+    @TempDir
+    File tempDir;
+    private RepositoryRegistry registry;
+    private String repoUrl;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new RepositoryRegistry();
+        repoUrl = "file://" + new File("src/test/repos/samplerepo").getAbsolutePath();
+    }
+
+    @Test
+    public void shouldShareOneGenerationAcrossEquivalentRepositoryUrls() {
+        MetadataGeneration first = registry.currentGeneration(new RepoUrl(repoUrl, null, null));
+        MetadataGeneration second = registry.currentGeneration(new RepoUrl(repoUrl + "/", null, null));
+
+        assertSame(first, second);
+        assertEquals("1378128003", first.getMetadata().getRevision());
+        assertEquals(1, registry.getGenerationsLoaded(new RepoUrl(repoUrl, null, null)));
+    }
+
+    @Test
+    public void shouldDeriveDataOncePerGeneration() {
+        MetadataGeneration generation = registry.currentGeneration(new RepoUrl(repoUrl, null, null));
+        List<String> builds = new ArrayList<>();
+
+        String first = generation.derive("key", g -> {
+            builds.add(g.getVersion());
+            return "derived";
+        });
+        String second = generation.derive("key", g -> {
+            builds.add(g.getVersion());
+            return "rebuilt";
+        });
+
+        assertEquals("derived", first);
+        assertEquals("derived", second);
+        assertEquals(1, builds.size());
+    }
+
+    @Test
+    public void shouldDeriveAgainAfterAFailedBuild() {
+        MetadataGeneration generation = registry.currentGeneration(new RepoUrl(repoUrl, null, null));
+
+        assertThrows(IllegalStateException.class, () -> generation.derive("key", g -> {
+            throw new IllegalStateException("download failed");
+        }));
+        String derived = generation.derive("key", g -> "derived");
+
+        assertEquals("derived", derived);
+    }
+
+    @Test
+    public void shouldLoadMetadataOnceForConcurrentMaterialsOnTheSameRepository() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<MetadataGeneration>> polls = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                polls.add(() -> registry.currentGeneration(new RepoUrl(repoUrl, null, null)));
+            }
+            List<Future<MetadataGeneration>> results = executor.invokeAll(polls);
+            for (Future<MetadataGeneration> result : results) {
+                assertSame(results.get(0).get(), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, registry.getGenerationsLoaded(new RepoUrl(repoUrl, null, null)));
+    }
+
+    @Test
+    public void shouldAdoptMetadataFetchedByAnotherProcess() throws Exception {
+        MockWebServer webServer = new MockWebServer();
+        webServer.start();
+        try {
+            String repomd = new String(Files.readAllBytes(new File("src/test/repos/samplerepo/repodata/repomd.xml").toPath()), StandardCharsets.UTF_8);
+            webServer.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "\"r1\"").setBody(repomd));
+            webServer.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"r1\""));
+            MetadataStore store = new MetadataStore(tempDir);
+            RepoUrl url = new RepoUrl(webServer.url("/repo").toString(), null, null);
+
+            MetadataGeneration fetched = new RepositoryRegistry(store).currentGeneration(url);
+            MetadataGeneration adopted = new RepositoryRegistry(store).currentGeneration(url);
+
+            assertEquals(fetched.getVersion(), adopted.getVersion());
+            assertNull(webServer.takeRequest().getHeader("If-None-Match"));
+            assertEquals("\"r1\"", webServer.takeRequest().getHeader("If-None-Match"));
+        } finally {
+            webServer.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldHandOutAFreshGenerationWithoutCheckingRepomdAgain() throws Exception {
+        MockWebServer webServer = new MockWebServer();
+        webServer.start();
+        try {
+            String repomd = new String(Files.readAllBytes(new File("src/test/repos/samplerepo/repodata/repomd.xml").toPath()), StandardCharsets.UTF_8);
+            webServer.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "\"r1\"").setBody(repomd));
+            RepositoryRegistry fresh = new RepositoryRegistry(null, TimeUnit.MINUTES.toMillis(1));
+            RepoUrl url = new RepoUrl(webServer.url("/repo").toString(), null, null);
+
+            MetadataGeneration first = fresh.currentGeneration(url);
+            MetadataGeneration second = fresh.currentGeneration(url);
+
+            assertSame(first, second);
+            assertEquals(1, webServer.getRequestCount());
+        } finally {
+            webServer.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldHandOutTheCurrentGenerationWhileAnotherMaterialChecksRepomd() throws Exception {
+        RepoUrl url = new RepoUrl(repoUrl, null, null);
+        MetadataGeneration loaded = registry.currentGeneration(url);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch checked = new CountDownLatch(1);
+        Thread checking = new Thread(() -> {
+            try (RepositoryLockManager.Lease ignored = RepositoryLockManager.getInstance().acquire(RepositoryRegistry.lockKey(url.sharingKey()), RepositoryLockManager.Mode.WRITE)) {
+                locked.countDown();
+                checked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        checking.start();
+        try {
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            assertSame(loaded, registry.currentGeneration(url));
+        } finally {
+            checked.countDown();
+            checking.join();
+        }
+    }
+
+    @Test
+    public void shouldPropagateFailureToReachRepository() {
+        try {
+            registry.currentGeneration(new RepoUrl("file:///does/not/exist", null, null));
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertEquals("Invalid file path.", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RpmVersionComparatorTest {
+    // from rpm's tests/rpmvercmp.at
+    private static final String[][] RPMVERCMP = {
+            {"1.0", "1.0", "0"},
+            {"1.0", "2.0", "-1"},
+            {"2.0", "1.0", "1"},
+            {"2.0.1", "2.0.1", "0"},
+            {"2.0", "2.0.1", "-1"},
+            {"2.0.1", "2.0", "1"},
+            {"2.0.1a", "2.0.1a", "0"},
+            {"2.0.1a", "2.0.1", "1"},
+            {"2.0.1", "2.0.1a", "-1"},
+            {"5.5p1", "5.5p1", "0"},
+            {"5.5p1", "5.5p2", "-1"},
+            {"5.5p2", "5.5p1", "1"},
+            {"5.5p10", "5.5p10", "0"},
+            {"5.5p1", "5.5p10", "-1"},
+            {"5.5p10", "5.5p1", "1"},
+            {"10xyz", "10.1xyz", "-1"},
+            {"10.1xyz", "10xyz", "1"},
+            {"xyz10", "xyz10", "0"},
+            {"xyz10", "xyz10.1", "-1"},
+            {"xyz10.1", "xyz10", "1"},
+            {"xyz.4", "xyz.4", "0"},
+            {"xyz.4", "8", "-1"},
+            {"8", "xyz.4", "1"},
+            {"xyz.4", "2", "-1"},
+            {"2", "xyz.4", "1"},
+            {"5.5p2", "5.6p1", "-1"},
+            {"5.6p1", "5.5p2", "1"},
+            {"5.6p1", "6.5p1", "-1"},
+            {"6.5p1", "5.6p1", "1"},
+            {"6.0.rc1", "6.0", "1"},
+            {"6.0", "6.0.rc1", "-1"},
+            {"10b2", "10a1", "1"},
+            {"10a2", "10b2", "-1"},
+            {"1.0aa", "1.0aa", "0"},
+            {"1.0a", "1.0aa", "-1"},
+            {"1.0aa", "1.0a", "1"},
+            {"10.0001", "10.0001", "0"},
+            {"10.0001", "10.1", "0"},
+            {"10.1", "10.0001", "0"},
+            {"10.0001", "10.0039", "-1"},
+            {"10.0039", "10.0001", "1"},
+            {"4.999.9", "5.0", "-1"},
+            {"5.0", "4.999.9", "1"},
+            {"20101121", "20101121", "0"},
+            {"20101121", "20101122", "-1"},
+            {"20101122", "20101121", "1"},
+            {"2_0", "2_0", "0"},
+            {"2.0", "2_0", "0"},
+            {"2_0", "2.0", "0"},
+            {"a", "a", "0"},
+            {"a+", "a+", "0"},
+            {"a+", "a_", "0"},
+            {"a_", "a+", "0"},
+            {"+a", "+a", "0"},
+            {"+a", "_a", "0"},
+            {"_a", "+a", "0"},
+            {"+_", "+_", "0"},
+            {"_+", "+_", "0"},
+            {"_+", "_+", "0"},
+            {"+", "_", "0"},
+            {"_", "+", "0"},
+            {"1.0~rc1", "1.0~rc1", "0"},
+            {"1.0~rc1", "1.0", "-1"},
+            {"1.0", "1.0~rc1", "1"},
+            {"1.0~rc1", "1.0~rc2", "-1"},
+            {"1.0~rc2", "1.0~rc1", "1"},
+            {"1.0~rc1~git123", "1.0~rc1~git123", "0"},
+            {"1.0~rc1~git123", "1.0~rc1", "-1"},
+            {"1.0~rc1", "1.0~rc1~git123", "1"},
+            {"1.0^", "1.0^", "0"},
+            {"1.0^", "1.0", "1"},
+            {"1.0", "1.0^", "-1"},
+            {"1.0^git1", "1.0^git1", "0"},
+            {"1.0^git1", "1.0", "1"},
+            {"1.0", "1.0^git1", "-1"},
+            {"1.0^git1", "1.0^git2", "-1"},
+            {"1.0^git2", "1.0^git1", "1"},
+            {"1.0^git1", "1.01", "-1"},
+            {"1.01", "1.0^git1", "1"},
+            {"1.0^20160101", "1.0^20160101", "0"},
+            {"1.0^20160101", "1.0.1", "-1"},
+            {"1.0.1", "1.0^20160101", "1"},
+            {"1.0^20160101^git1", "1.0^20160101^git1", "0"},
+            {"1.0^20160102", "1.0^20160101^git1", "1"},
+            {"1.0^20160101^git1", "1.0^20160102", "-1"},
+            {"1.0~rc1^git1", "1.0~rc1^git1", "0"},
+            {"1.0~rc1^git1", "1.0~rc1", "1"},
+            {"1.0~rc1", "1.0~rc1^git1", "-1"},
+            {"1.0^git1~pre", "1.0^git1~pre", "0"},
+            {"1.0^git1", "1.0^git1~pre", "1"},
+            {"1.0^git1~pre", "1.0^git1", "-1"},
+            {"1b.fc17", "1b.fc17", "0"},
+            {"1b.fc17", "1.fc17", "-1"},
+            {"1.fc17", "1b.fc17", "1"},
+            {"1g.fc17", "1g.fc17", "0"},
+            {"1g.fc17", "1.fc17", "1"},
+            {"1.fc17", "1g.fc17", "-1"},
+    };
+
+    @Test
+    public void shouldOrderVersionsLikeRpmvercmp() {
+        for (String[] row : RPMVERCMP) {
+            assertEquals(Integer.parseInt(row[2]), Integer.signum(RpmVersionComparator.rpmvercmp(row[0], row[1])), row[0] + " <=> " + row[1]);
+        }
+    }
+
+    @Test
+    public void shouldCompareEpochBeforeVersionAndRelease() {
+        assertEquals(1, Integer.signum(RpmVersionComparator.compareEvr("1", "1.0", "1", "0", "2.0", "1")));
+        assertEquals(-1, Integer.signum(RpmVersionComparator.compareEvr(null, "1.0", "1", "1", "1.0", "1")));
+        assertEquals(0, RpmVersionComparator.compareEvr("", "1.0", "1.el7", "0", "1.0", "1.el7"));
+        assertEquals(1, Integer.signum(RpmVersionComparator.compareEvr("0", "1.0", "10.el7", "0", "1.0", "9.el7")));
+    }
+
+    @Test
+    public void shouldCompareRevisionLabelsOfTheSameNameArch() {
+        assertEquals(1, Integer.signum(RpmVersionComparator.compareLabels("go-agent-13.10.0-1.noarch", null, "go-agent-13.9.1-16714.noarch", null)));
+        assertEquals(-1, Integer.signum(RpmVersionComparator.compareLabels("go-agent-13.10.0-1.noarch", "0", "go-agent-1.0-1.noarch", "1")));
+        assertEquals(Integer.valueOf(0), RpmVersionComparator.compareLabels("php-0-0.noarch", null, "php-0-0.noarch", "0"));
+        assertNull(RpmVersionComparator.compareLabels("go-agent-13.1.1-16714.noarch", null, "go-server-13.1.1-16714.noarch", null));
+        assertNull(RpmVersionComparator.compareLabels("go-agent-13.1.1-16714.noarch", null, "go-agent-13.1.1-16714.x86_64", null));
+        assertNull(RpmVersionComparator.compareLabels("go-agent-13.1.1-16714.noarch", null, "go-agent", null));
+    }
+}
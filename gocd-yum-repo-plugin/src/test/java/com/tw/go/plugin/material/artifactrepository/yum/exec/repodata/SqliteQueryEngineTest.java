@@ -0,0 +1,112 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.Constants;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.MultiplePackageException;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.command.RepoQueryParams;
+import com.tw.go.plugin.material.artifactrepository.yum.exec.message.PackageRevisionMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SqliteQueryEngineTest {
+    @TempDir
+    File tempDir;
+    private String repoUrl;
+    private SqliteQueryEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        System.setProperty("go.yum.tmpdir", tempDir.getAbsolutePath());
+        repoUrl = "file://" + new File("src/test/repos/samplerepo").getAbsolutePath();
+        engine = new SqliteQueryEngine(new RepositoryRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty("go.yum.tmpdir");
+    }
+
+    @Test
+    public void shouldResolvePackageFromPrimaryDatabase() {
+        PackageRevisionMessage revision = engine.query(params(repoUrl, "go-agent"));
+
+        assertEquals("go-agent-13.1.1-16714.noarch", revision.getRevision());
+        assertEquals(new Date(1365054258000L), revision.getTimestamp());
+        assertEquals(repoUrl + "/go-agent-13.1.1-16714.noarch.rpm", revision.getDataFor(Constants.PACKAGE_LOCATION));
+    }
+
+    @Test
+    public void shouldResolveGlobsAndFullySpecifiedSpecs() {
+        assertEquals("php-0-0.noarch", engine.query(params(repoUrl, "ph*")).getRevision());
+        assertEquals("go-server-13.1.1-16714.noarch", engine.query(params(repoUrl, "0:go-server-13.1.1-16714.noarch")).getRevision());
+        assertEquals("log-13.1.1-16714.x86_64", engine.query(params(repoUrl, "*.x86_64")).getRevision());
+    }
+
+    @Test
+    public void shouldFailWhenSpecResolvesToMoreThanOnePackage() {
+        try {
+            engine.query(params(repoUrl, "go*"));
+            fail("expected failure");
+        } catch (MultiplePackageException e) {
+            assertEquals("Given Package Spec (go*) resolves to more than one file on the repository: go-agent-13.1.1-16714.noarch.rpm, go-server-13.1.1-16714.noarch.rpm", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldFailWhenNoPackageMatches() {
+        try {
+            engine.query(params(repoUrl, "go-a"));
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith(String.format("Error while querying repository with path '%s' and package spec 'go-a'.", repoUrl)));
+        }
+    }
+
+    @Test
+    public void shouldDownloadDatabaseOncePerRepositoryRevision() {
+        File first = engine.databaseFor(new RepoUrl(repoUrl, null, null));
+        File second = engine.databaseFor(new RepoUrl(repoUrl + "/", null, null));
+
+        assertSame(first, second);
+        assertTrue(first.getAbsolutePath().startsWith(tempDir.getAbsolutePath()));
+        assertTrue(first.getName().endsWith(".sqlite"));
+    }
+
+    @Test
+    public void shouldFailWhenRepositoryIsEmpty() {
+        String emptyRepoUrl = "file://" + new File("src/test/repos/emptyrepo").getAbsolutePath();
+        try {
+            engine.query(params(emptyRepoUrl, "go-agent"));
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith(String.format("Error while querying repository with path '%s' and package spec 'go-agent'.", emptyRepoUrl)));
+        }
+    }
+
+    private RepoQueryParams params(String url, String spec) {
+        return new RepoQueryParams("repoid", new RepoUrl(url, null, null), spec);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2022 ThoughtWorks, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tw.go.plugin.material.artifactrepository.yum.exec.repodata;
+
+import com.tw.go.plugin.material.artifactrepository.yum.exec.RepoUrl;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ZchunkDownloaderTest {
+    private static final String LOCATION = "repodata/primary.xml.zck";
+
+    @TempDir
+    Path temp;
+    private File remote;
+    private File cache;
+    private RepoUrl repository;
+    private ZchunkDownloader downloader;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        File repo = temp.resolve("repo").toFile();
+        remote = new File(repo, LOCATION);
+        assertTrue(remote.getParentFile().mkdirs());
+        repository = new RepoUrl("file://" + repo.getAbsolutePath(), null, null);
+        MetadataStore store = new MetadataStore(temp.resolve("store").toFile());
+        cache = store.directoryOf(repository);
+        downloader = new ZchunkDownloader(store);
+    }
+
+    @Test
+    public void shouldDecompressChunksAfterTheDictionary() throws IOException {
+        byte[] zck = zchunk("<metadata>", "<package>a</package>", "", "</metadata>");
+        RepoDataEntry entry = entry(zck);
+
+        try (InputStream xml = MetadataStreams.pipeline(entry, new ByteArrayInputStream(zck))) {
+            assertEquals("<metadata><package>a</package></metadata>", new String(IOUtils.toByteArray(xml), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void shouldDownloadTheWholeFileWithoutAPreviousGeneration() throws IOException {
+        byte[] zck = zchunk("<metadata>", "<package>a</package>", "</metadata>");
+        Files.write(remote.toPath(), zck);
+
+        File downloaded = downloader.download(repository, entry(zck));
+
+        assertArrayEquals(zck, Files.readAllBytes(downloaded.toPath()));
+        assertEquals(zck.length, downloader.getBytesDownloaded());
+        assertEquals(0, downloader.getBytesReused());
+    }
+
+    @Test
+    public void shouldOnlyDownloadChunksMissingFromThePreviousGeneration() throws IOException {
+        byte[] first = zchunk("<metadata>", "<package>a</package>", "<package>b</package>", "</metadata>");
+        Files.write(remote.toPath(), first);
+        File previous = downloader.download(repository, entry(first));
+        byte[] second = zchunk("<metadata>", "<package>a</package>", "<package>c-changed</package>", "</metadata>");
+        Files.write(remote.toPath(), second);
+        long before = downloader.getBytesDownloaded();
+
+        File downloaded = downloader.download(repository, entry(second));
+
+        assertArrayEquals(second, Files.readAllBytes(downloaded.toPath()));
+        long headerLength = ZchunkHeader.lengthOf(second);
+        assertEquals(headerLength + "<package>c-changed</package>".length(), downloader.getBytesDownloaded() - before);
+        assertEquals(second.length - headerLength - "<package>c-changed</package>".length(), downloader.getBytesReused());
+        assertFalse(previous.exists());
+    }
+
+    @Test
+    public void shouldFailWhenTheDownloadDoesNotMatchTheChecksumInRepomd() throws IOException {
+        byte[] zck = zchunk("<metadata>", "</metadata>");
+        Files.write(remote.toPath(), zck);
+        RepoDataEntry entry = new RepoDataEntry(NativeQueryEngine.PRIMARY_ZCK, LOCATION, "sha256", DigestUtils.sha256Hex("something else"), null, null, zck.length, 0);
+
+        try {
+            downloader.download(repository, entry);
+            fail("expected failure");
+        } catch (RuntimeException e) {
+            assertTrue(CorruptMetadataException.isCauseOf(e));
+            assertTrue(e.getMessage().contains("repodata/primary.xml.zck has checksum"), e.getMessage());
+        }
+        assertArrayEquals(new String[0], cache.list((dir, name) -> !name.endsWith(MetadataStore.LOCK_SUFFIX)));
+    }
+
+    private static RepoDataEntry entry(byte[] zck) {
+        return new RepoDataEntry(NativeQueryEngine.PRIMARY_ZCK, LOCATION, "sha256", DigestUtils.sha256Hex(zck), null, null, zck.length, 0);
+    }
+
+    /**
+     * An uncompressed zchunk file with SHA-256 checksums and an empty dictionary.
+     */
+    static byte[] zchunk(String... chunks) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        writeInt(index, 1);
+        writeInt(index, chunks.length + 1);
+        index.write(DigestUtils.sha256(new byte[0]));
+        writeInt(index, 0);
+        writeInt(index, 0);
+        for (String chunk : chunks) {
+            byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+            index.write(DigestUtils.sha256(bytes));
+            writeInt(index, bytes.length);
+            writeInt(index, bytes.length);
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(new byte[32]);
+        writeInt(header, 0);
+        writeInt(header, ZchunkHeader.COMPRESSION_NONE);
+        writeInt(header, index.size());
+        index.writeTo(header);
+        writeInt(header, 0);
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(new byte[]{0, 'Z', 'C', 'K', '1'});
+        writeInt(file, 1);
+        writeInt(file, header.size());
+        file.write(DigestUtils.sha256(header.toByteArray()));
+        header.writeTo(file);
+        for (String chunk : chunks) {
+            file.write(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+        return file.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f));
+            value >>>= 7;
+        }
+        out.write((int) (value | 0x80));
+    }
+}